@@ -21,10 +21,27 @@ public abstract class AbstractColorSorter implements ColorSorter {
 	public CompOrder compOrder = CompOrder.RGB;
 	public SwapChannel swap;
 	public long count = 0;
+	/** number of exchanges, counted like count, see getExchanges() */
+	public long exchanges = 0;
+	/** number of times breakTest() returned true */
+	public long breaks = 0;
 	int testV = 0;
 	int testW = 0;
-	int[] compV;
-	int[] compW;
+	/** the colors most recently compared by less(), see exch() */
+	int lastV = 0;
+	int lastW = 0;
+	/** exchange with channel swapping for the current swap settings, null if we aren't swapping */
+	SwapKernel swapKernel;
+	/** if true, sorts without channel swapping compare precomputed keys instead of calling less() on colors */
+	boolean isKeyedSort = true;
+	/** reusable buffer of (key, pixel) pairs for keyed sorting */
+	long[] keys;
+	/** largest keys buffer we hold on to between sorts, bigger requests get a temporary buffer */
+	static final int MAX_RETAINED_KEYS = 1 << 20;
+	/** source of random numbers for breaks, if null we use the host PApplet's random() */
+	GlitchRandom random;
+	/** number of calls to breakTest() that will return false before the next break, see scheduleBreak() */
+	long breakCountdown = -1;
 	private PApplet app;
 	
 	public AbstractColorSorter(PApplet app) {
@@ -70,120 +87,23 @@ public abstract class AbstractColorSorter implements ColorSorter {
 	}
 
 
-	// permits many different evaluations of the color values of two pixels.
-	// could be optimized, but then it would be harder to understand
+	/**
+	 * Compares two colors by their components in the order given by compOrder. 
+	 * Records v and w in lastV and lastW for exch(), which swaps channels between them.
+	 * @param v   a Processing color as a 32-bit integer
+	 * @param w   a Processing color as a 32-bit integer
+	 * @return    true if v sorts before w
+	 */
 	public boolean less(int v, int w) { 
-	    compV = rgbComponents(v);
-	    compW = rgbComponents(w);
-	    testV = v;
-	    testW = w;
-		switch(compOrder) {
-		case RGB: {
-			break;
-		}
-		case BRG: {
-			testV = composeColor(compV[2], compV[0], compV[1], 255);
-			testW = composeColor(compW[2], compW[0], compW[1], 255);
-			break;
-		}
-		case GBR: {
-			testV = composeColor(compV[1], compV[2], compV[0], 255);
-			testW = composeColor(compW[1], compW[2], compW[0], 255);
-			break;
-		}
-		case GRB: {
-			testV = composeColor(compV[1], compV[0], compV[2], 255);
-			testW = composeColor(compW[1], compW[0], compW[2], 255);
-			break;
-		}
-		case BGR: {
-			testV = composeColor(compV[2], compV[1], compV[0], 255);
-			testW = composeColor(compW[2], compW[1], compW[0], 255);
-			break;
-		}
-		case RBG: {
-			testV = composeColor(compV[0], compV[2], compV[1], 255);
-			testW = composeColor(compW[0], compW[2], compW[1], 255);
-			break;
-		}
-		case HSB: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(hueV, satV, brightV, 255);
-			testW = composeColor(hueW, satW, brightW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
-		}
-		case HBS: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(hueV, brightV, satV, 255);
-			testW = composeColor(hueW, brightW, satW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
-		}
-		case BHS: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(brightV, hueV, satV, 255);
-			testW = composeColor(brightW, hueW, satW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
-		}
-		case SHB: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(satV, hueV, brightV, 255);
-			testW = composeColor(satW, hueW, brightW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
-		}
-		case BSH: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(brightV, satV, hueV, 255);
-			testW = composeColor(brightW, satW, hueW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
-		}
-		case SBH: {
-			app.colorMode(PApplet.HSB, 255);
-			int hueV = Math.round(app.hue(v));
-			int brightV = Math.round(app.brightness(v));
-			int satV = Math.round(app.saturation(v));
-			int hueW = Math.round(app.hue(w));
-			int brightW = Math.round(app.brightness(w));
-			int satW = Math.round(app.saturation(w));
-			testV = composeColor(satV, brightV, hueV, 255);
-			testW = composeColor(satW, brightW, hueW, 255);
-			app.colorMode(PApplet.RGB, 255);
-			break;
+		lastV = v;
+		lastW = w;
+		if (CompOrder.RGB == compOrder) {
+			testV = v;
+			testW = w;
 		}
+		else {
+			testV = 255 << 24 | componentKey(v);
+			testW = 255 << 24 | componentKey(w);
 		}
 		count++;			
 		if (isAscendingSort) return testV > testW;
@@ -191,128 +111,172 @@ public abstract class AbstractColorSorter implements ColorSorter {
 		// return v < w; 
 	} 
 		
+	/**
+	 * Exchanges a[i] and a[j]. If we are swapping channels, the swapKernel writes new colors 
+	 * derived from the colors that less() compared most recently.
+	 */
 	public void exch(int[] a, int i, int j) { 
-		if (isSwapChannels) {
-			// compV associates with index i, compW associates with index j
-			if (swapWeight >= 1) {
-				// PApplet.print("-");
-				switch (swap) {
-				case RR: {
-					a[i] = composeColor(compW[0], compV[1], compV[2], 255);
-					a[j] = composeColor(compV[0], compW[1], compW[2], 255);
-					break;
-				}
-				case RG: {
-					a[i] = composeColor(compW[1], compV[1], compV[2], 255);
-					a[j] = composeColor(compW[0], compV[0], compW[2], 255);
-					break;
-				}
-				case RB: {
-					a[i] = composeColor(compW[2], compV[1], compV[2], 255);
-					a[j] = composeColor(compW[0], compW[1], compV[0], 255);
-					break;
-				}
-				case GR: {
-					a[i] = composeColor(compV[0], compW[0], compV[2], 255);
-					a[j] = composeColor(compV[1], compW[1], compW[2], 255);
-					break;
-				}
-				case GG: {
-					a[i] = composeColor(compV[0], compW[1], compV[2], 255);
-					a[j] = composeColor(compW[0], compV[1], compW[2], 255);
-					break;
-				}
-				case GB: {
-					a[i] = composeColor(compV[0], compW[2], compV[2], 255);
-					a[j] = composeColor(compW[0], compW[1], compV[1], 255);
-					break;
-				}
-				case BR: {
-					a[i] = composeColor(compV[0], compV[1], compW[0], 255);
-					a[j] = composeColor(compV[2], compW[1], compW[2], 255);
-					break;
-				}
-				case BG: {
-					a[i] = composeColor(compV[0], compV[1], compW[1], 255);
-					a[j] = composeColor(compW[0], compV[2], compW[2], 255);
-					break;
-				}
-				case BB: {
-					a[i] = composeColor(compV[0], compV[1], compW[2], 255);
-					a[j] = composeColor(compW[0], compW[1], compV[2], 255);
-					break;
-				}
-				}
-			}
-			else {
-				// swapWeight is between 0 and 1
-				// PApplet.print(".");
-				switch (swap) {
-				case RR: {
-					a[i] = composeColor((int)(lerp(compV[0], compW[0], swapWeight)), compV[1], compV[2], 255);
-					a[j] = composeColor((int)(lerp(compW[0], compV[0], swapWeight)), compW[1], compW[2], 255);
-					break;
-				}
-				case RG: {
-					a[i] = composeColor((int)(lerp(compV[0], compW[1], swapWeight)), compV[1], compV[2], 255);
-					a[j] = composeColor(compW[0], (int)(lerp(compW[1], compV[0], swapWeight)), compW[2], 255);
-					break;
-				}
-				case RB: {
-					a[i] = composeColor((int)(lerp(compV[0], compW[2], swapWeight)), compV[1], compV[2], 255);
-					a[j] = composeColor(compW[0], compW[1], (int)(lerp(compW[2], compV[0], swapWeight)), 255);
-					break;
-				}
-				case GR: {
-					a[i] = composeColor(compV[0], (int)(lerp(compV[1], compW[0], swapWeight)), compV[2], 255);
-					a[j] = composeColor((int)(lerp(compW[0], compV[1], swapWeight)), compW[1], compW[2], 255);
-					break;
-				}
-				case GG: {
-					a[i] = composeColor(compV[0], (int)(lerp(compV[1], compW[1], swapWeight)), compV[2], 255);
-					a[j] = composeColor(compW[0], (int)(lerp(compW[1], compV[1], swapWeight)), compW[2], 255);
-					break;
-				}
-				case GB: {
-					a[i] = composeColor(compV[0], (int)(lerp(compV[1], compW[2], swapWeight)), compV[2], 255);
-					a[j] = composeColor(compW[0], compW[1], (int)(lerp(compW[2], compV[1], swapWeight)), 255);
-					break;
-				}
-				case BR: {
-					a[i] = composeColor(compV[0], compV[1], (int)(lerp(compV[2], compW[0], swapWeight)), 255);
-					a[j] = composeColor(compV[2], compW[1], (int)(lerp(compW[0], compV[2], swapWeight)), 255);
-					break;
-				}
-				case BG: {
-					a[i] = composeColor(compV[0], compV[1], (int)(lerp(compV[2], compW[1], swapWeight)), 255);
-					a[j] = composeColor(compW[0], (int)(lerp(compW[1], compV[2], swapWeight)), compW[2], 255);
-					break;
-				}
-				case BB: {
-					a[i] = composeColor(compV[0], compV[1], (int)(lerp(compV[2], compW[2], swapWeight)), 255);
-					a[j] = composeColor(compW[0], compW[1], (int)(lerp(compW[2], compV[2], swapWeight)), 255);
-					break;
-				}
-				}
-			}
+		exchanges++;
+		if (null != swapKernel) {
+			swapKernel.exch(a, i, j, lastV, lastW);
 		}
 		else {
-//			the following two lines should also be equivalent to a swap
-/*				a[i] = composeColor(compV[0], compV[1], compV[2], 255);
-			a[j] = composeColor(compW[0], compW[1], compW[2], 255)
-*/				 // swap
 			int t = a[i]; 
 			a[i] = a[j]; 
 			a[j] = t; 
 		}
 	} 
+	
+	/**
+	 * Resolves the swap settings into a SwapKernel for exch(). Called when the settings change, 
+	 * so that SortSelector.setControlState() resolves them once for each command.
+	 */
+	void resolveSwapKernel() {
+		swapKernel = SwapKernel.create(isSwapChannels, swap, swapWeight);
+	}
 
 	public void compExch(int[] a, int i, int j) { 
 		if (less(a[j], a[i])) exch (a, i, j); 
 	} 
 	
-	// this method is different for each algorithm
-	public abstract void sort(int[] a, int l, int r);
+	
+	/***** KEYED SORTING *****/
+	
+	/**
+	 * Projects a color onto a sort key for the current compOrder and isAscendingSort, so that
+	 * sortKey(v) < sortKey(w) exactly when less(v, w) is true. Keys use the low 24 bits of the color, 
+	 * which is the same as less() for the opaque pixels GlitchSort works with.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       a key in the range 0..0xFFFFFF
+	 */
+	public int sortKey(int argb) {
+		int key = componentKey(argb);
+		// less() answers testV > testW for an ascending sort, flip the key so that we can always use < 
+		if (isAscendingSort) return 0xFFFFFF - key;
+		return key;
+	}
+	
+	/**
+	 * Rearranges the components of a color in the order given by compOrder.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       the components of argb in compOrder, in the range 0..0xFFFFFF
+	 */
+	public int componentKey(int argb) {
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		int key = 0;
+		switch(compOrder) {
+		case RGB: { key = r << 16 | g << 8 | b; break; }
+		case BRG: { key = b << 16 | r << 8 | g; break; }
+		case GBR: { key = g << 16 | b << 8 | r; break; }
+		case GRB: { key = g << 16 | r << 8 | b; break; }
+		case BGR: { key = b << 16 | g << 8 | r; break; }
+		case RBG: { key = r << 16 | b << 8 | g; break; }
+		default: {
+			int hsb = ColorSpace.hsb(argb);
+			int hue = hsb >> 16;
+			int sat = (hsb >> 8) & 0xFF;
+			int bright = hsb & 0xFF;
+			switch(compOrder) {
+			case HSB: { key = hue << 16 | sat << 8 | bright; break; }
+			case HBS: { key = hue << 16 | bright << 8 | sat; break; }
+			case BHS: { key = bright << 16 | hue << 8 | sat; break; }
+			case SHB: { key = sat << 16 | hue << 8 | bright; break; }
+			case BSH: { key = bright << 16 | sat << 8 | hue; break; }
+			case SBH: { key = sat << 16 | bright << 8 | hue; break; }
+			default: { }
+			}
+		}
+		}
+		return key;
+	}
+	
+	/**
+	 * Loads pixels a[l..r] into a buffer of packed pairs, with the sort key in the high 32 bits
+	 * and the pixel value in the low 32 bits, at indices 0..(r - l). 
+	 * @param a   an array of pixel values
+	 * @param l   left bound
+	 * @param r   right bound
+	 * @return    the buffer of (key, pixel) pairs
+	 */
+	public long[] loadKeys(int[] a, int l, int r) {
+		int n = r - l + 1;
+		long[] k = keys;
+		if (null == k || k.length < n) {
+			k = new long[n];
+			if (n <= MAX_RETAINED_KEYS) keys = k;
+		}
+		for (int i = 0; i < n; i++) {
+			int argb = a[l + i];
+			k[i] = (long) sortKey(argb) << 32 | (argb & 0xFFFFFFFFL);
+		}
+		return k;
+	}
+	
+	/**
+	 * Writes the pixel values in a buffer of (key, pixel) pairs back to a[l..r].
+	 * @param k   buffer of (key, pixel) pairs, as returned by loadKeys()
+	 * @param a   an array of pixel values
+	 * @param l   left bound
+	 * @param r   right bound
+	 */
+	public void storeKeys(long[] k, int[] a, int l, int r) {
+		int n = r - l + 1;
+		for (int i = 0; i < n; i++) {
+			a[l + i] = (int) k[i];
+		}
+	}
+
+	/**
+	 * Compares two (key, pixel) pairs, returns true if the key of the first is less than the key of the second.
+	 * Keys are non-negative, so there is no need to unpack them.
+	 */
+	public boolean less(long v, long w) {
+		count++;
+		return (v >>> 32) < (w >>> 32);
+	}
+	
+	public void exch(long[] a, int i, int j) {
+		exchanges++;
+		long t = a[i]; 
+		a[i] = a[j]; 
+		a[j] = t; 
+	}
+	
+	public void compExch(long[] a, int i, int j) { 
+		if (less(a[j], a[i])) exch (a, i, j); 
+	} 
+	
+	/**
+	 * Sorts a[l..r]. Unless we are swapping channels, which depends on the colors that less() 
+	 * compared most recently, pixels are projected onto keys once and sorted with sortKeys(). 
+	 * Otherwise, sortValues() compares colors directly.
+	 */
+	public void sort(int[] a, int l, int r) {
+		if (isRandomBreak) scheduleBreak();
+		if (isKeyedSort && !isSwapChannels) {
+			if (r <= l) return;
+			long[] k = loadKeys(a, l, r);
+			sortKeys(k, 0, r - l);
+			storeKeys(k, a, l, r);
+		}
+		else {
+			sortValues(a, l, r);
+		}
+	}
+	
+	// these methods are different for each algorithm
+	/**
+	 * Sorts an array of colors between a left index and a right index, calling less() and exch().
+	 */
+	public abstract void sortValues(int[] a, int l, int r);
+
+	/**
+	 * Sorts an array of (key, pixel) pairs between a left index and a right index.
+	 * Should follow the same steps, with the same random breaks, as sortValues().
+	 */
+	public abstract void sortKeys(long[] a, int l, int r);
 
 	// this convenience method permits sorting of any arbitrary array of ints
 	public void sort(int[] a) {
@@ -352,10 +316,49 @@ public abstract class AbstractColorSorter implements ColorSorter {
 
 	public void setBreakPoint(float breakPoint) {
 		this.breakPoint = breakPoint;
+		this.breakCountdown = -1;
 	}
 	
-	public boolean breakTest() {
-		return (breakPoint < app.random(0, 1000));
+	/**
+	 * Returns true when a sort should break off. Each call breaks with probability (1000 - breakPoint)/1000,
+	 * just as if we compared breakPoint to random(0, 1000), but we only draw a random number when 
+	 * we break, to schedule the next break, and otherwise just count down.
+	 * @return true if the sort should break
+	 */
+	public final boolean breakTest() {
+		if (breakCountdown > 0) {
+			breakCountdown--;
+			return false;
+		}
+		if (breakCountdown < 0) {
+			// no break is scheduled yet
+			scheduleBreak();
+			return breakTest();
+		}
+		scheduleBreak();
+		breaks++;
+		return true;
+	}
+	
+	/**
+	 * Sets the number of calls to breakTest() before the next break, drawn from the geometric distribution
+	 * of the number of failures before the first success of a test with probability p = (1000 - breakPoint)/1000. 
+	 * Called at the start of each sort, so that each sort draws on its current source of random numbers.
+	 */
+	public void scheduleBreak() {
+		double p = (1000 - breakPoint) / 1000.0;
+		if (p >= 1) {
+			breakCountdown = 0;
+		}
+		else if (p <= 0) {
+			breakCountdown = Long.MAX_VALUE;
+		}
+		else {
+			// u is uniform in (0, 1], so log(u) is finite
+			double u = (null != random) ? 1.0 - random.nextDouble() : 1.0 - app.random(1);
+			double gap = Math.floor(Math.log(u) / Math.log1p(-p));
+			breakCountdown = (gap >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) gap;
+		}
 	}
 
 	/**
@@ -370,6 +373,7 @@ public abstract class AbstractColorSorter implements ColorSorter {
 	 */
 	public void setSwapChannels(boolean isSwapChannels) {
 		this.isSwapChannels = isSwapChannels;
+		resolveSwapKernel();
 	}
 
 	/**
@@ -384,6 +388,7 @@ public abstract class AbstractColorSorter implements ColorSorter {
 	 */
 	public void setSwapWeight(float swapWeight) {
 		this.swapWeight = swapWeight;
+		resolveSwapKernel();
 	}
 
 	/**
@@ -400,6 +405,56 @@ public abstract class AbstractColorSorter implements ColorSorter {
 		this.isAscendingSort = isAscendingSort;
 	}
 
+	/**
+	 * @return the isKeyedSort
+	 */
+	public boolean isKeyedSort() {
+		return isKeyedSort;
+	}
+
+	/**
+	 * @param isKeyedSort the isKeyedSort to set
+	 */
+	public void setKeyedSort(boolean isKeyedSort) {
+		this.isKeyedSort = isKeyedSort;
+	}
+
+	/**
+	 * @return the random
+	 */
+	public GlitchRandom getRandom() {
+		return random;
+	}
+
+	/**
+	 * @param random the random to set
+	 */
+	public void setRandom(GlitchRandom random) {
+		this.random = random;
+		this.breakCountdown = -1;
+	}
+
+	/**
+	 * @return the number of comparisons made since this sorter was created
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of exchanges made since this sorter was created
+	 */
+	public long getExchanges() {
+		return exchanges;
+	}
+
+	/**
+	 * @return the number of random breaks since this sorter was created
+	 */
+	public long getBreaks() {
+		return breaks;
+	}
+
 	public SorterType getSorterType() {
 		return sorterType;
 	}
@@ -430,6 +485,7 @@ public abstract class AbstractColorSorter implements ColorSorter {
 	 */
 	public void setSwap(SwapChannel swap) {
 		this.swap = swap;
+		resolveSwapKernel();
 	}
 
 }
@@ -0,0 +1,308 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Base class for pixel scanners that read their coordinates from a ScanTable. Subclasses generate
+ * coordinates for orientation 0 in generateCoords(), which is only called if ScannerCache doesn't
+ * already hold a table for the scanner's type and size. Flipping and swapping coordinates selects
+ * one of 8 immutable views in other orientations instead of rewriting the coordinates, because tables are shared.
+ * Coordinates are stored packed, see ScanTable.pack(), until a scanner modifies them in a way a table can't 
+ * represent, such as rotateXLeft(), and detaches them into separate arrays of x and y coordinates.
+ */
+abstract class AbstractScanner implements PixelScannerINF {
+	/** largest block for which plant() writes rows in order through the index map rather than scattering pixels */
+	static final int PLANT_MAP_LIMIT = 256 * 256;
+	/** packed coordinates from table, or while generating coordinates */
+	int[] coords;
+	/** x coordinates, null unless detached */
+	int[] xcoords;
+	/** y coordinates, null unless detached */
+	int[] ycoords;
+	/** the dimension of an edge of the square block of pixels, or its width, see getBlockHeight() */
+	int d;
+	/** the total number of points in the scan */
+	int n;
+	/** the verbose */
+	boolean verbose = false;
+	/** table of coordinates in orientation 0 */
+	ScanTable base;
+	/** table of coordinates in the current orientation */
+	ScanTable table;
+	/** tables for each of the 8 orientations, indexed by orientation and filled in when first used */
+	ScanTable[] views = new ScanTable[8];
+
+	/**
+	 * @return the name of the type of scan, used as a key in ScannerCache
+	 */
+	abstract String getType();
+
+	/**
+	 * Generates coordinates in orientation 0 with setCoord(), into an array that has already been allocated.
+	 */
+	abstract void generateCoords();
+
+	/**
+	 * Sets a coordinate, for use in generateCoords().
+	 * @param pos   an index in the scan
+	 * @param x     x coordinate of the point at pos
+	 * @param y     y coordinate of the point at pos
+	 */
+	void setCoord(int pos, int x, int y) {
+		coords[pos] = ScanTable.pack(x, y);
+	}
+
+	/**
+	 * Gets our coordinates from ScannerCache, generating and caching them if necessary.
+	 * Square scanners call this from their constructors, once d and n are set.
+	 */
+	void loadTable() {
+		loadTable(d, d);
+	}
+
+	/**
+	 * Gets our coordinates for a block of pixels of any shape from ScannerCache, 
+	 * generating and caching them if necessary.
+	 * @param width    width of the block of pixels
+	 * @param height   height of the block of pixels
+	 */
+	void loadTable(int width, int height) {
+		base = ScannerCache.get(getType(), width, height, 0);
+		if (null == base) {
+			coords = new int[n];
+			generateCoords();
+			base = ScannerCache.put(new ScanTable(getType(), width, height, 0, coords));
+		}
+		views[0] = base;
+		setTable(base);
+	}
+
+	/**
+	 * Selects one of the 8 orientations of our coordinates. Transposing a block that isn't square
+	 * exchanges its width and height. Each orientation is an immutable view
+	 * that we get from ScannerCache the first time it's used, after that selecting it is a lookup.
+	 * Discards any modifications to coordinates, such as rotateXLeft().
+	 * @param orientation   a combination of ScanTable.TRANSPOSE, ScanTable.FLIP_X and ScanTable.FLIP_Y
+	 */
+	public void setOrientation(int orientation) {
+		orientation &= 7;
+		ScanTable view = views[orientation];
+		if (null == view) {
+			view = ScannerCache.orient(base, orientation);
+			views[orientation] = view;
+		}
+		setTable(view);
+	}
+
+	/**
+	 * @return the orientation of our coordinates, see setOrientation()
+	 */
+	public int getOrientation() {
+		return table.orientation;
+	}
+
+	/**
+	 * @param table   the table to read coordinates from
+	 */
+	void setTable(ScanTable table) {
+		this.table = table;
+		this.coords = table.coords;
+		this.xcoords = null;
+		this.ycoords = null;
+	}
+
+	/**
+	 * @return true if our coordinates have been modified, so they no longer come from a shared table
+	 */
+	boolean isDetached() {
+		return null != xcoords;
+	}
+
+	/**
+	 * Unpacks private copies of our coordinates into xcoords and ycoords, 
+	 * before modifying them in ways a ScanTable can't represent.
+	 */
+	void detach() {
+		if (isDetached()) return;
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = ScanTable.unpackX(coords[i]);
+			ys[i] = ScanTable.unpackY(coords[i]);
+		}
+		xcoords = xs;
+		ycoords = ys;
+	}
+
+	public void flipX() {
+		if (isDetached()) {
+			int m = table.width - 1;
+			for (int i = 0; i < xcoords.length; i++) {
+				xcoords[i] = m - xcoords[i];
+			}
+		}
+		else {
+			setOrientation(ScanTable.flipX(table.orientation));
+		}
+	}
+
+	public void flipY() {
+		if (isDetached()) {
+			int m = table.height - 1;
+			for (int i = 0; i < ycoords.length; i++) {
+				ycoords[i] = m - ycoords[i];
+			}
+		}
+		else {
+			setOrientation(ScanTable.flipY(table.orientation));
+		}
+	}
+
+	/**
+	 * Swaps the x and y coordinates in the map.
+	 */
+	public void swapCoords() {
+		if (isDetached()) {
+			int[] temp = xcoords;
+			xcoords = ycoords;
+			ycoords = temp;
+		}
+		else {
+			setOrientation(ScanTable.transpose(table.orientation));
+		}
+	}
+
+	/**
+	 * @param pix   an array of pixels
+	 * @param w     width of the image represented by the array of pixels
+	 * @param h     height of the image represented by the array of pixels
+	 * @param x     x-coordinate of the location in the image to scan
+	 * @param y     y-coordinate of the location in the image to scan
+	 * @return      an array in the order determined by the scan
+	 */
+	public int[] pluck(int[] pix, int w, int h, int x, int y) {
+		return pluck(pix, w, h, x, y, new int[n]);
+	}
+
+	/**
+	 * @param pix   an array of pixels
+	 * @param w     width of the image represented by the array of pixels
+	 * @param h     height of the image represented by the array of pixels
+	 * @param x     x-coordinate of the location in the image to scan
+	 * @param y     y-coordinate of the location in the image to scan
+	 * @param dst   an array of at least n = d * d pixels to write to
+	 * @return      dst, with its first n values in the order determined by the scan
+	 */
+	public int[] pluck(int[] pix, int w, int h, int x, int y, int[] dst) {
+		int[] off = getOffsets(w);
+		int p0 = y * w + x;
+		if (verbose) {
+			for (int i = 0; i < n; i++) {
+				System.out.println("x = "+ x +", y = "+ y +", i = "+ i +", p = "+ (p0 + off[i]) +", "+ getType() +" = ("+ xcoord(i) +", "+ ycoord(i) +")");
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			dst[i] = pix[p0 + off[i]];
+		}
+		return dst;
+	}
+
+	/**
+	 * @param pix      an array of pixels
+	 * @param sprout   an array of n = d * d pixels to write to the array of pixels
+	 * @param w        width of the image represented by the array of pixels
+	 * @param h        height of the image represented by the array of pixels
+	 * @param x        x-coordinate of the location in the image to write to
+	 * @param y        y-coordinate of the location in the image to write to
+	 */
+	public void plant(int[] pix, int[] sprout, int w, int h, int x, int y) {
+		if (isDetached() || !table.isComplete() || n > PLANT_MAP_LIMIT) {
+			// the index map doesn't match modified coordinates, doesn't cover the block, 
+			// or is too large to be worth building, so we write in scan order
+			int[] off = getOffsets(w);
+			int p0 = y * w + x;
+			for (int i = 0; i < n; i++) {
+				pix[p0 + off[i]] = sprout[i];
+			}
+			return;
+		}
+		// write each row of the block in order, looking up where its pixels are in the scan
+		int[] indexMap = table.indexMap();
+		int bw = table.width;
+		int bh = table.height;
+		for (int row = 0, k = 0; row < bh; row++) {
+			int p = (y + row) * w + x;
+			for (int col = 0; col < bw; col++) {
+				pix[p++] = sprout[indexMap[k++]];
+			}
+		}
+	}
+
+	/**
+	 * @param w   width of an image
+	 * @return    offsets of our coordinates from the top left corner of a block in an image of width w
+	 */
+	int[] getOffsets(int w) {
+		if (!isDetached()) return table.offsets(w);
+		int[] off = new int[n];
+		for (int i = 0; i < n; i++) {
+			off[i] = ycoords[i] * w + xcoords[i];
+		}
+		return off;
+	}
+
+	/** return the width of the block of pixels in the current orientation */
+	public int getBlockWidth() {
+		return table.width;
+	}
+
+	/** return the height of the block of pixels in the current orientation */
+	public int getBlockHeight() {
+		return table.height;
+	}
+
+	/** return the number of pixel values mapped in this PixelScannerINF instance */
+	public int getSize() {
+		return n;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/** return the index of a point in the mapped representation, or -1 if the scan doesn't visit it */
+	public int lookup(int x, int y) {
+		if (isDetached()) {
+			// modified coordinates may not be a permutation, so we return the first match
+			for (int i = 0; i < n; i++) {
+				if (xcoords[i] == x && ycoords[i] == y) return i;
+			}
+			return -1;
+		}
+		int c = ScanTable.unorient(table.orientation, table.width, table.height, x, y);
+		return lookupBase(ScanTable.unpackX(c), ScanTable.unpackY(c));
+	}
+
+	/**
+	 * Returns the index of a point in orientation 0. Scanners whose curve has a closed form inverse 
+	 * override this so that lookup() doesn't need to build an index map.
+	 * @param x   x coordinate in orientation 0
+	 * @param y   y coordinate in orientation 0
+	 * @return    index of (x, y) in the scan, or -1 if the scan doesn't visit it
+	 */
+	int lookupBase(int x, int y) {
+		return base.indexMap()[x + base.width * y];
+	}
+
+	/** return the x coordinate at a specified index in the map */
+	public int xcoord(int pos) {
+		return isDetached() ? xcoords[pos] : ScanTable.unpackX(coords[pos]);
+	}
+
+	/** return the y coordinate at a specified index in the map */
+	public int ycoord(int pos) {
+		return isDetached() ? ycoords[pos] : ScanTable.unpackY(coords[pos]);
+	}
+}
@@ -51,6 +51,41 @@ public interface ColorSorter extends Sorter {
 	 */
 	public void setAscendingSort(boolean isAscendingSort);
 
+	/**
+	 * @return the isKeyedSort
+	 */
+	public boolean isKeyedSort();
+
+	/**
+	 * @param isKeyedSort the isKeyedSort to set
+	 */
+	public void setKeyedSort(boolean isKeyedSort);
+
+	/**
+	 * @return the source of random numbers for breaks, null if the host PApplet supplies them
+	 */
+	public GlitchRandom getRandom();
+
+	/**
+	 * @param random the source of random numbers for breaks, null to use the host PApplet
+	 */
+	public void setRandom(GlitchRandom random);
+
+	/**
+	 * @return the number of comparisons made since this sorter was created
+	 */
+	public long getCount();
+
+	/**
+	 * @return the number of exchanges made since this sorter was created
+	 */
+	public long getExchanges();
+
+	/**
+	 * @return the number of random breaks since this sorter was created
+	 */
+	public long getBreaks();
+
 	public SorterType getSorterType();
 	
 	/**
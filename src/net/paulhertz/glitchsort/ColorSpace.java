@@ -0,0 +1,187 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Conversions between RGB and HSB colors, with the same results as PApplet.hue(), saturation(), brightness()
+ * and color() with colorMode(HSB, 255), but without changing the color mode of a PApplet, allocating memory,
+ * or sharing a cache. All methods are pure functions of their arguments, so they are safe to call from any thread.
+ * <p>
+ * Conversions to rounded, packed HSB values can optionally use a lookup table with an entry for every 24-bit
+ * RGB color. The table takes TABLE_BYTES (64 MB) of memory, and is built the first time it is used.
+ * </p>
+ */
+public class ColorSpace {
+	/** number of entries in the lookup table, one for each 24-bit RGB color */
+	public static final int TABLE_SIZE = 1 << 24;
+	/** memory used by the lookup table, in bytes */
+	public static final long TABLE_BYTES = 4L * TABLE_SIZE;
+	/** if true, hsb() looks up its results in the table */
+	private static volatile boolean isUseTable = false;
+	/** rounded, packed HSB values for every 24-bit RGB color, null until it is built */
+	private static volatile int[] hsbTable;
+
+	private ColorSpace() {
+		// static methods only
+	}
+
+	/**
+	 * @return true if hsb() uses a lookup table
+	 */
+	public static boolean isUseTable() {
+		return isUseTable;
+	}
+
+	/**
+	 * Sets whether hsb() should use a lookup table. The table is built when it is first needed,
+	 * and released when it is turned off.
+	 * @param useTable   true if hsb() should use a lookup table
+	 */
+	public static void setUseTable(boolean useTable) {
+		isUseTable = useTable;
+		if (!useTable) hsbTable = null;
+	}
+
+	/**
+	 * @return memory used by the lookup table, in bytes, 0 if it hasn't been built
+	 */
+	public static long getTableBytes() {
+		return (null == hsbTable) ? 0 : TABLE_BYTES;
+	}
+
+	/**
+	 * @return the lookup table, built if necessary
+	 */
+	private static int[] getTable() {
+		int[] table = hsbTable;
+		if (null == table) {
+			synchronized (ColorSpace.class) {
+				table = hsbTable;
+				if (null == table) {
+					table = new int[TABLE_SIZE];
+					for (int rgb = 0; rgb < TABLE_SIZE; rgb++) {
+						table[rgb] = calcHSB(rgb);
+					}
+					hsbTable = table;
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the hue, saturation and brightness of a color, each rounded to an int in the range 0..255,
+	 * packed into an int as (hue << 16 | saturation << 8 | brightness). The same as Math.round(app.hue(argb)),
+	 * Math.round(app.saturation(argb)) and Math.round(app.brightness(argb)) with a color mode range of 255.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       hue, saturation and brightness, packed into an int
+	 */
+	public static int hsb(int argb) {
+		if (isUseTable) return getTable()[argb & 0xFFFFFF];
+		return calcHSB(argb);
+	}
+
+	/**
+	 * Calculates rounded, packed HSB values, see hsb().
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       hue, saturation and brightness, packed into an int
+	 */
+	private static int calcHSB(int argb) {
+		return Math.round(hue(argb)) << 16 | Math.round(saturation(argb)) << 8 | Math.round(brightness(argb));
+	}
+
+	/**
+	 * Hue of a color, the same as PApplet.hue() with a color mode range of 255.
+	 * Follows the arithmetic of java.awt.Color.RGBtoHSB(), which PApplet uses.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       hue in the range 0..255
+	 */
+	public static float hue(int argb) {
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		int cmax = (r > g) ? r : g;
+		if (b > cmax) cmax = b;
+		int cmin = (r < g) ? r : g;
+		if (b < cmin) cmin = b;
+		if (cmax == 0 || cmax == cmin) return 0;
+		float range = (float) (cmax - cmin);
+		float redc = ((float) (cmax - r)) / range;
+		float greenc = ((float) (cmax - g)) / range;
+		float bluec = ((float) (cmax - b)) / range;
+		float hue;
+		if (r == cmax) hue = bluec - greenc;
+		else if (g == cmax) hue = 2.0f + redc - bluec;
+		else hue = 4.0f + greenc - redc;
+		hue = hue / 6.0f;
+		if (hue < 0) hue = hue + 1.0f;
+		return hue * 255.0f;
+	}
+
+	/**
+	 * Saturation of a color, the same as PApplet.saturation() with a color mode range of 255.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       saturation in the range 0..255
+	 */
+	public static float saturation(int argb) {
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		int cmax = (r > g) ? r : g;
+		if (b > cmax) cmax = b;
+		int cmin = (r < g) ? r : g;
+		if (b < cmin) cmin = b;
+		if (cmax == 0) return 0;
+		return (((float) (cmax - cmin)) / ((float) cmax)) * 255.0f;
+	}
+
+	/**
+	 * Brightness of a color, the same as PApplet.brightness() with a color mode range of 255.
+	 * @param argb   a Processing color as a 32-bit integer
+	 * @return       brightness in the range 0..255
+	 */
+	public static float brightness(int argb) {
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		int cmax = (r > g) ? r : g;
+		if (b > cmax) cmax = b;
+		return (((float) cmax) / 255.0f) * 255.0f;
+	}
+
+	/**
+	 * Creates an opaque color from hue, saturation and brightness, the same as PApplet.color(h, s, b, 255)
+	 * in colorMode(HSB, 255). Values are clamped to the range 0..255.
+	 * @param h   hue
+	 * @param s   saturation
+	 * @param v   brightness
+	 * @return    a Processing color as a 32-bit integer
+	 */
+	public static int color(float h, float s, float v) {
+		float x = h > 255 ? 255 : h < 0 ? 0 : h;
+		float y = s > 255 ? 255 : s < 0 ? 0 : s;
+		float z = v > 255 ? 255 : v < 0 ? 0 : v;
+		x /= 255.0f;
+		y /= 255.0f;
+		z /= 255.0f;
+		float calcR = 0, calcG = 0, calcB = 0;
+		if (y == 0) {
+			calcR = calcG = calcB = z;
+		}
+		else {
+			float which = (x - (int) x) * 6.0f;
+			float f = which - (int) which;
+			float p = z * (1.0f - y);
+			float q = z * (1.0f - y * f);
+			float t = z * (1.0f - (y * (1.0f - f)));
+			switch ((int) which) {
+			case 0: { calcR = z; calcG = t; calcB = p; break; }
+			case 1: { calcR = q; calcG = z; calcB = p; break; }
+			case 2: { calcR = p; calcG = z; calcB = t; break; }
+			case 3: { calcR = p; calcG = q; calcB = z; break; }
+			case 4: { calcR = t; calcG = p; calcB = z; break; }
+			case 5: { calcR = z; calcG = p; calcB = q; break; }
+			default: { }
+			}
+		}
+		return 0xFF000000 | ((int) (255 * calcR)) << 16 | ((int) (255 * calcG)) << 8 | ((int) (255 * calcB));
+	}
+}
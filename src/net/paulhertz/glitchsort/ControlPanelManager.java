@@ -415,24 +415,27 @@ public class ControlPanelManager extends PApplet {
 		createButton("sortPixels", 8, yPos, 76, widgetH, glitchSettings, "Sort (g)");
 		// sorter selection radio buttons
 		yPos += step + 2;
-		RadioButton r1 = createRadioButton("setSorter", 8, yPos, 5, 40, glitchSettings, foreColor, activeColor, labelColor);
+		RadioButton r1 = createRadioButton("setSorter", 8, yPos, 6, 40, glitchSettings, foreColor, activeColor, labelColor);
 		r1.setNoneSelectedAllowed(false);
-		// enum SorterType {QUICK, SHELL, BUBBLE, INSERT;} 
+		// enum SorterType {QUICK, SHELL, BUBBLE, INSERT, RADIX, MERGE;} 
 		int n = 0;
 		labelW = 32;
 		r1.addItem("QUICK", n++);
 		r1.addItem("SHELL", n++);
 		r1.addItem("BUBBLE", n++);
 		r1.addItem("INSERT", n++);
+		r1.addItem("RADIX", n++);
+		r1.addItem("MERGE", n++);
 		setRadioButtonStyle(r1, labelW);
 		/* r1.activate("QUICK"); */ // will throw a (non-fatal but annoying) error, see startup method
 		// sorting checkboxes
 		yPos += step - 4;
-		CheckBox ch2 = createCheckBox("Sorting", 8, yPos, 3, (panelWidth - 8)/4, glitchSettings, foreColor, activeColor, labelColor);
+		CheckBox ch2 = createCheckBox("Sorting", 8, yPos, 4, (panelWidth - 8)/4, glitchSettings, foreColor, activeColor, labelColor);
 		// add items to the checkbox
 		ch2.addItem("Ascending", 1);
 		ch2.addItem("Break", 2);
 		ch2.addItem("Swap", 3);
+		ch2.addItem("Parallel", 4);
 		ch2.setColorForeground(app.color(233, 233, 0));
 		ch2.activate(1);
 		// breakPoint number box
@@ -593,6 +596,17 @@ public class ControlPanelManager extends PApplet {
 		// label for zigzagPercent number box
 		Textlabel l10a = control.addTextlabel("zigzagPercentLabel", "%:", 198, yPos + 2);
 		l10a.setGroup(glitchSettings);		
+		// HSB lookup table, show its memory cost in the label
+		yPos += step;
+		CheckBox ch4 = createCheckBox("ColorTable", 8, yPos + 2, 3, (panelWidth - 8)/4, glitchSettings, foreColor, activeColor, labelColor);
+		ch4.addItem("HSB table ("+ (ColorSpace.TABLE_BYTES >> 20) +" MB)", 1);
+		ch4.setColorForeground(app.color(233, 233, 0));
+		if (app.isHSBTable) ch4.activate(0);
+		// introsort or the original quick sort, which glitch differently with random breaks
+		CheckBox ch5 = createCheckBox("Quicksort", 2 * panelWidth/3 + 8, yPos + 2, 3, (panelWidth - 8)/4, glitchSettings, foreColor, activeColor, labelColor);
+		ch5.addItem("Introsort", 1);
+		ch5.setColorForeground(app.color(233, 233, 0));
+		if (app.isIntroSort) ch5.activate(0);
 		// create glitch glitchSettings tab
 		Tab global = control.getTab("default");
 		global.setLabel("");
@@ -1413,6 +1427,8 @@ public void loadAudifyPanel() {
 				app.setRandomBreak(n == 1, true);
 				n = (int)(evt.getGroup().getArrayValue()[2]);
 				app.setIsSwapChannels(n == 1, true);
+				n = (int)(evt.getGroup().getArrayValue()[3]);
+				app.setParallelSort(n == 1, true);
 			}
 			else if ("setSourceChannel".equals(evt.getName())) {
 				println("---- setSourcechannel");
@@ -1444,6 +1460,14 @@ public void loadAudifyPanel() {
 				int n = (int)(evt.getGroup().getArrayValue()[0]);
 				app.invertMunge(n == 1, true);
 			}
+			else if ("ColorTable".equals(evt.getName())) {
+				int n = (int)(evt.getGroup().getArrayValue()[0]);
+				app.setHSBTable(n == 1, true);
+			}
+			else if ("Quicksort".equals(evt.getName())) {
+				int n = (int)(evt.getGroup().getArrayValue()[0]);
+				app.setIntroSort(n == 1, true);
+			}
 			else if ("Glitchmode".equals(evt.getName())) {
 				int n = (int)(evt.getGroup().getArrayValue()[0]);
 				app.setCycle(n == 1, true);
@@ -1469,7 +1493,7 @@ public void loadAudifyPanel() {
 				app.setStatChan(b == 1, h == 1, s == 1, r == 1, g == 1, bl == 1, true);
 			}
 			else if ("hilbert".equals(evt.getName())) {
-				app.isHilbertScan = ((int)(evt.getGroup().getArrayValue()[0])) == 1;
+				app.setIsHilbertScan(((int)(evt.getGroup().getArrayValue()[0])) == 1, true);
 				println("-------- isHilbertScan = "+ app.isHilbertScan);
 			}
 			else if ("FormantRGB".equals(evt.getName())) {
@@ -1525,6 +1549,7 @@ public void loadAudifyPanel() {
 				if (bin >= 0 && bin < app.eq.length) {
 					if (val < 0) app.eq[bin] = val + 1;
 					else app.eq[bin] = lerp(0, app.eqScale, val) + 1;
+					app.calculateEqGains();
 					String legend = "band "+ bin +" = "+ app.twoPlaces.format(app.eq[bin]);
 					if (null != app.binTotals && bin < app.binTotals.length) {
 						// TODO : duplicated code here, put it in a function
@@ -4,7 +4,6 @@
 package net.paulhertz.glitchsort;
 
 import processing.core.*;
-import ddf.minim.analysis.*;
 import ddf.minim.*;
 //static import statement (Java 1.5) allows us to use unqualified constant names
 import static net.paulhertz.glitchsort.GlitchConstants.*;
@@ -16,7 +15,7 @@ import static net.paulhertz.glitchsort.GlitchConstants.*;
 public class FFTHandler {
 	private GlitchSort app;
 	private Minim minim;
-	private FFT fft;
+	private Spectrum fft;
 
 	/**
 	 * @param app
@@ -26,7 +25,7 @@ public class FFTHandler {
 		super();
 		this.app = app;
 		this.minim = minim;
-		this.fft = new FFT(app.statBufferSize, app.sampleRate);
+		this.fft = new RealFFT(app.statBufferSize, app.sampleRate);
 	}
 	
   /**
@@ -127,7 +126,6 @@ public class FFTHandler {
    * @param samples   rgb values in an array of int
    * @param chan      the channel to extract 
    * @return          the extracted channel values as an array of floats
-   * requires app.brightness(), app.hue(), app.saturation()
    */
   public float[] pullChannel(int[] samples, ChannelNames chan) {
   	// convert sample channel to float array buf
@@ -135,15 +133,15 @@ public class FFTHandler {
   	int i = 0;
   	switch (chan) {
   	case L: {
-  		for (int argb : samples) buf[i++] = app.brightness(argb);
+  		for (int argb : samples) buf[i++] = ColorSpace.brightness(argb);
   		break;
   	}
   	case H: {
-  		for (int argb : samples) buf[i++] = app.hue(argb);
+  		for (int argb : samples) buf[i++] = ColorSpace.hue(argb);
   		break;
   	}
   	case S: {
-  		for (int argb : samples) buf[i++] = app.saturation(argb);
+  		for (int argb : samples) buf[i++] = ColorSpace.saturation(argb);
   		break;
   	}
   	case R: {
@@ -165,7 +163,6 @@ public class FFTHandler {
   /**
    * Replaces a specified channel in an array of pixel values with a value 
    * derived from an array of floats and clipped to the range 0..255.
-   * requires: app.colorMode(), app.color(), app.hue(), app.brightness(), app.saturation()
    * 
    * @param samples   an array of pixel values
    * @param buf       an array of floats
@@ -176,32 +173,29 @@ public class FFTHandler {
   	int i = 0;
   	switch (chan) {
   	case L: {
-  		app.colorMode(PApplet.HSB, 255);
   		for (float component : buf) {
   			int comp = Math.round((int) component); 
   			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-  			int argb = samples[i];
-  			samples[i++] = app.color(Math.round(app.hue(argb)), Math.round(app.saturation(argb)), comp, 255);
+  			int hsb = ColorSpace.hsb(samples[i]);
+  			samples[i++] = ColorSpace.color(hsb >> 16, (hsb >> 8) & 0xFF, comp);
   		}
   		break;
   	}
   	case H: {
-  		app.colorMode(PApplet.HSB, 255);
   		for (float component : buf) {
   			int comp = Math.round((int) component); 
   			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-  			int argb = samples[i];
-  			samples[i++] = app.color(comp, Math.round(app.saturation(argb)), Math.round(app.brightness(argb)), 255);
+  			int hsb = ColorSpace.hsb(samples[i]);
+  			samples[i++] = ColorSpace.color(comp, (hsb >> 8) & 0xFF, hsb & 0xFF);
   		}
   		break;
   	}
   	case S: {
-  		app.colorMode(PApplet.HSB, 255);
   		for (float component : buf) {
   			int comp = Math.round((int) component); 
   			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-  			int argb = samples[i];
-  			samples[i++] = app.color(Math.round(app.hue(argb)), comp, Math.round(app.brightness(argb)), 255);
+  			int hsb = ColorSpace.hsb(samples[i]);
+  			samples[i++] = ColorSpace.color(hsb >> 16, comp, hsb & 0xFF);
   		}
   		break;
   	}
@@ -241,7 +235,7 @@ public class FFTHandler {
 	/**
 	 * Performs an FFT on a supplied array of samples, scales frequencies using settings in the 
 	 * equalizer interface, modifies the samples and also returns the modified samples. 
-	 * requires: app.calculatedBands, app.bandList, app.eq
+	 * requires: app.eqGains, or app.calculatedBands, app.bandList and app.eq to calculate it
 	 * 
 	 * @param samples   an array of RGB values
 	 * @param chan      the channel to pass through the FFT
@@ -252,18 +246,10 @@ public class FFTHandler {
 		float[] buf = pullChannel(samples, chan);
 		// do a forward transform on the array of floats
 		fft.forward(buf);
-		// scale the frequencies in the fft by user-selected values from the equalizer interface
-		for (int i = 0; i < app.calculatedBands; i++) {
-			// get indices of the range of bands covered by each slider
-			int pos = app.eq.length - i - 1;
-			GlitchSort.IntRange ir = app.bandList.get(pos);
-			// get the scaling value set by the user
-			float scale = app.eq[pos];
-			// scale all bands between lower and upper index
-			for (int j = ir.lower; j <= ir.upper; j++) {
-				fft.scaleBand(j, scale);
-			}
-		}
+		// scale the frequencies in the fft by user-selected values from the equalizer interface, in one pass
+		float[] gains = app.eqGains;
+		if (null == gains || gains.length != fft.specSize()) gains = app.calculateEqGains();
+		fft.scaleBands(gains);
 		// inverse the transform
 		fft.inverse(buf);
 		pushChannel(samples, buf, chan);
@@ -293,6 +279,7 @@ public class FFTHandler {
 		int oh = (img.height - h) / 2;
 		app.backup();
 		img.loadPixels();
+		int[] pix = new int[zz.getSize()];
 		for (int y = 0; y < dh; y++) {
 			for (int x = 0; x < dw; x++) {
 				int mx = x * order + ow;
@@ -304,7 +291,7 @@ public class FFTHandler {
 				//     			if (random(1) > 0.5f) {
 				//    				zz.flipY();
 				//    			}
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
+				zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
 				// the samples are returned by fftEqGlitch, but they are modified already
 				if (app.isEqGlitchBrightness) fftEqGlitch(pix, ChannelNames.L);
 				if (app.isEqGlitchHue) fftEqGlitch(pix, ChannelNames.H);
@@ -396,6 +383,7 @@ public class FFTHandler {
 		float[] stats = new float[6];
 		app.backup();
 		img.loadPixels();
+		int[] pix = new int[zz.getSize()];
 		for (int y = 0; y < dh; y++) {
 			for (int x = 0; x < dw; x++) {
 				int mx = x * order + ow;
@@ -406,7 +394,7 @@ public class FFTHandler {
 				//     			if (random(1) > 0.5f) {
 				//    				zz.flipY();
 				//    			}
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
+				zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
 				if (app.isStatGlitchBrightness) stats = fftStatGlitch(pix, ChannelNames.L);
 				if (app.isStatGlitchHue) stats = fftStatGlitch(pix, ChannelNames.H);
 				if (app.isStatGlitchSaturation) stats = fftStatGlitch(pix, ChannelNames.S);
@@ -0,0 +1,129 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Implements "Gilbert" scanning, a generalized Hilbert curve that fills a rectangle of any width and height
+ * with a continuous, locality preserving path. Where the width or height is odd, the path includes a single
+ * diagonal step. Unlike HilbertScanner and Zigzagger, the block does not have to be a square with a power of 2
+ * for an edge, so a GilbertScanner can scan an entire image with no margins left over.
+ * Provides methods for reading (pluck) and writing (plant) from an array of pixels.
+ * Based on the gilbert2d algorithm by Jakub Cerveny.
+ */
+class GilbertScanner extends AbstractScanner {
+	/** name of this type of scan in ScannerCache */
+	static final String TYPE = "Gilbert";
+	/** the height of the block of pixels, d is the width */
+	int height;
+	/** next index to write to while generating coordinates */
+	private int pos;
+
+	/**
+	 * @param width    the number of pixels on a horizontal edge of the scan block
+	 * @param height   the number of pixels on a vertical edge of the scan block
+	 */
+	public GilbertScanner(int width, int height) {
+		d = width;
+		this.height = height;
+		n = width * height;
+		loadTable(width, height);
+	}
+
+	String getType() {
+		return TYPE;
+	}
+
+	/**
+	 * Generates coordinates of a block of pixels of specified dimensions, offset from (0,0).
+	 * Called by loadTable() when ScannerCache doesn't have them yet.
+	 */
+	void generateCoords() {
+		pos = 0;
+		if (d >= height) {
+			generate(0, 0, d, 0, 0, height);
+		}
+		else {
+			generate(0, 0, 0, height, d, 0);
+		}
+	}
+
+	/**
+	 * Fills the rectangle at (x, y) with major axis (ax, ay) and minor axis (bx, by).
+	 */
+	private void generate(int x, int y, int ax, int ay, int bx, int by) {
+		int w = Math.abs(ax + ay);
+		int h = Math.abs(bx + by);
+		// unit major and minor directions
+		int dax = Integer.signum(ax);
+		int day = Integer.signum(ay);
+		int dbx = Integer.signum(bx);
+		int dby = Integer.signum(by);
+		if (h == 1) {
+			for (int i = 0; i < w; i++) {
+				add(x, y);
+				x += dax;
+				y += day;
+			}
+			return;
+		}
+		if (w == 1) {
+			for (int i = 0; i < h; i++) {
+				add(x, y);
+				x += dbx;
+				y += dby;
+			}
+			return;
+		}
+		int ax2 = Math.floorDiv(ax, 2);
+		int ay2 = Math.floorDiv(ay, 2);
+		int bx2 = Math.floorDiv(bx, 2);
+		int by2 = Math.floorDiv(by, 2);
+		int w2 = Math.abs(ax2 + ay2);
+		int h2 = Math.abs(bx2 + by2);
+		if (2 * w > 3 * h) {
+			// long rectangle: split in two along the major axis, preferring an even split
+			if ((w2 % 2) != 0 && w > 2) {
+				ax2 += dax;
+				ay2 += day;
+			}
+			generate(x, y, ax2, ay2, bx, by);
+			generate(x + ax2, y + ay2, ax - ax2, ay - ay2, bx, by);
+		}
+		else {
+			// split in three: up the minor axis, across, and back down
+			if ((h2 % 2) != 0 && h > 2) {
+				bx2 += dbx;
+				by2 += dby;
+			}
+			generate(x, y, bx2, by2, ax2, ay2);
+			generate(x + bx2, y + by2, ax, ay, bx - bx2, by - by2);
+			generate(x + (ax - dax) + (bx2 - dbx), y + (ay - day) + (by2 - dby), -bx2, -by2, -(ax - ax2), -(ay - ay2));
+		}
+	}
+
+	private void add(int x, int y) {
+		setCoord(pos, x, y);
+		pos++;
+	}
+
+	/** no internal coordinates to swap */
+	public void swapXY() {
+
+	}
+
+	public int getDepth() {
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * returns a list of coordinate points that define a Gilbert scan of width d and height height.
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuffer buf = new StringBuffer();
+		buf.append("Gilbert "+ this.d +" x "+ this.height +"\n  ");
+		for (int i = 0; i < n; i++) {
+			buf.append("("+ xcoord(i) +", "+ ycoord(i) +") ");
+		}
+		buf.append("\n");
+		return buf.toString();
+	}
+}
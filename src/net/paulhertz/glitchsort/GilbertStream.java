@@ -0,0 +1,196 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Generates the points of a Gilbert curve over a rectangle lazily, in windows of any size,
+ * in the same order as GilbertScanner. Only a small stack of pending sub-rectangles is kept,
+ * so memory use does not depend on the size of the rectangle: an entire 100 megapixel image
+ * can be scanned with the memory of a single window.
+ * <p>
+ * Call next() to fill an array with the linear offsets, y * imageWidth + x, of the next points
+ * on the curve, then use pluck() and plant() to read and write pixels at those offsets.
+ * </p>
+ */
+final class GilbertStream {
+	/** width of the rectangle */
+	final int width;
+	/** height of the rectangle */
+	final int height;
+	/** pending sub-rectangles, 6 ints each: x, y, ax, ay, bx, by */
+	private int[] stack = new int[6 * 64];
+	/** number of ints in use on the stack */
+	private int top;
+	// the straight run of points we are emitting
+	private int x;
+	private int y;
+	private int dx;
+	private int dy;
+	private int left;
+	/** number of points not yet returned by next() */
+	private long remaining;
+
+	/**
+	 * @param width    width of the rectangle to scan
+	 * @param height   height of the rectangle to scan
+	 */
+	GilbertStream(int width, int height) {
+		this.width = width;
+		this.height = height;
+		reset();
+	}
+
+	/**
+	 * Restarts the stream at the beginning of the curve.
+	 */
+	void reset() {
+		top = 0;
+		left = 0;
+		remaining = (long) width * height;
+		if (remaining == 0) return;
+		if (width >= height) {
+			push(0, 0, width, 0, 0, height);
+		}
+		else {
+			push(0, 0, 0, height, width, 0);
+		}
+	}
+
+	/**
+	 * @return true if there are more points on the curve
+	 */
+	boolean hasNext() {
+		return remaining > 0;
+	}
+
+	/**
+	 * @return the number of points not yet returned by next()
+	 */
+	long getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 * Fills off with the linear offsets of the next points on the curve, in an image of width imageWidth.
+	 * @param off          an array to fill, its length is the size of the window
+	 * @param imageWidth   width of the image the rectangle is in
+	 * @return             the number of offsets written, less than off.length only at the end of the curve
+	 */
+	int next(int[] off, int imageWidth) {
+		int count = 0;
+		while (count < off.length) {
+			if (left == 0 && !advance()) break;
+			int n = Math.min(left, off.length - count);
+			int p = y * imageWidth + x;
+			int step = dy * imageWidth + dx;
+			for (int i = 0; i < n; i++) {
+				off[count++] = p;
+				p += step;
+			}
+			x += n * dx;
+			y += n * dy;
+			left -= n;
+		}
+		remaining -= count;
+		return count;
+	}
+
+	/**
+	 * Reads pixels at a window of offsets.
+	 * @param pix   an array of pixels
+	 * @param off   offsets returned by next()
+	 * @param len   number of offsets
+	 * @param dst   an array of at least len pixels to write to
+	 * @return      dst
+	 */
+	static int[] pluck(int[] pix, int[] off, int len, int[] dst) {
+		for (int i = 0; i < len; i++) {
+			dst[i] = pix[off[i]];
+		}
+		return dst;
+	}
+
+	/**
+	 * Writes pixels to a window of offsets.
+	 * @param pix      an array of pixels
+	 * @param sprout   pixels to write, in the order of off
+	 * @param off      offsets returned by next()
+	 * @param len      number of offsets
+	 */
+	static void plant(int[] pix, int[] sprout, int[] off, int len) {
+		for (int i = 0; i < len; i++) {
+			pix[off[i]] = sprout[i];
+		}
+	}
+
+	private void push(int x, int y, int ax, int ay, int bx, int by) {
+		if (top + 6 > stack.length) stack = java.util.Arrays.copyOf(stack, 2 * stack.length);
+		stack[top++] = x;
+		stack[top++] = y;
+		stack[top++] = ax;
+		stack[top++] = ay;
+		stack[top++] = bx;
+		stack[top++] = by;
+	}
+
+	/**
+	 * Splits pending rectangles, as GilbertScanner.generate() does, until one is a straight run of points.
+	 * @return false if there are no more points
+	 */
+	private boolean advance() {
+		while (top > 0) {
+			top -= 6;
+			int x = stack[top];
+			int y = stack[top + 1];
+			int ax = stack[top + 2];
+			int ay = stack[top + 3];
+			int bx = stack[top + 4];
+			int by = stack[top + 5];
+			int w = Math.abs(ax + ay);
+			int h = Math.abs(bx + by);
+			int dax = Integer.signum(ax);
+			int day = Integer.signum(ay);
+			int dbx = Integer.signum(bx);
+			int dby = Integer.signum(by);
+			if (h == 1) {
+				setRun(x, y, dax, day, w);
+				return true;
+			}
+			if (w == 1) {
+				setRun(x, y, dbx, dby, h);
+				return true;
+			}
+			int ax2 = Math.floorDiv(ax, 2);
+			int ay2 = Math.floorDiv(ay, 2);
+			int bx2 = Math.floorDiv(bx, 2);
+			int by2 = Math.floorDiv(by, 2);
+			int w2 = Math.abs(ax2 + ay2);
+			int h2 = Math.abs(bx2 + by2);
+			// push sub-rectangles in reverse order, so the first is popped next
+			if (2 * w > 3 * h) {
+				if ((w2 % 2) != 0 && w > 2) {
+					ax2 += dax;
+					ay2 += day;
+				}
+				push(x + ax2, y + ay2, ax - ax2, ay - ay2, bx, by);
+				push(x, y, ax2, ay2, bx, by);
+			}
+			else {
+				if ((h2 % 2) != 0 && h > 2) {
+					bx2 += dbx;
+					by2 += dby;
+				}
+				push(x + (ax - dax) + (bx2 - dbx), y + (ay - day) + (by2 - dby), -bx2, -by2, -(ax - ax2), -(ay - ay2));
+				push(x + bx2, y + by2, ax, ay, bx - bx2, by - by2);
+				push(x, y, bx2, by2, ax2, ay2);
+			}
+		}
+		return false;
+	}
+
+	private void setRun(int x, int y, int dx, int dy, int count) {
+		this.x = x;
+		this.y = y;
+		this.dx = dx;
+		this.dy = dy;
+		this.left = count;
+	}
+}
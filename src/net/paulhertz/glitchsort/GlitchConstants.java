@@ -22,7 +22,7 @@ public class GlitchConstants {
 
 	/** List of available sorting methods */
 	public enum SorterType {
-		QUICK, SHELL, BUBBLE, INSERT;
+		QUICK, SHELL, BUBBLE, INSERT, RADIX, MERGE;
 	}
 
 	/** List of possible channel swaps between source and target */
@@ -35,6 +35,16 @@ public class GlitchConstants {
 		RANDOM, ALIGN, PERMUTE;
 	}
 	
+	/** List of pixel scans for FFT and shifting blocks of pixels */
+	public enum ScanType {
+		ZIGZAG, HILBERT, MORTON, PEANO, LSYSTEM;
+	}
+	
+	/** List of curves for LSYSTEM scans, see LSystemScanner */
+	public enum LSystemCurve {
+		HILBERT, MOORE, GOSPER, DRAGON;
+	}
+	
 	/**	List of zizzag orientations, in an order easily referenced by bitwise values 00, 01, 10, 11 */
 	public enum ZigzagCorner {
 		TOPLEFT, BOTTOMLEFT, TOPRIGHT, BOTTOMRIGHT;
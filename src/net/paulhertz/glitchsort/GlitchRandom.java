@@ -0,0 +1,107 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * A small, fast, seedable source of random numbers for glitching, based on the SplitMix64 generator.
+ * Unlike PApplet.random(), each GlitchRandom is an independent stream: split() derives a new stream
+ * from the seed of this one and an index, such as a row or block number, without drawing any numbers.
+ * Work that is divided into rows or blocks gets the same random numbers for each row or block however
+ * the work is scheduled, so a given seed always produces the same image, on one thread or many.
+ * Not thread-safe: give each thread its own stream.
+ */
+public class GlitchRandom {
+	/** the golden ratio increment of SplitMix64 */
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+	/** the seed this stream was created with */
+	private final long seed;
+	/** current state of the generator */
+	private long state;
+
+	public GlitchRandom(long seed) {
+		this.seed = seed;
+		this.state = seed;
+	}
+
+	/**
+	 * Scrambles the bits of a long, the output function of SplitMix64.
+	 * @param z   a long
+	 * @return    a well mixed long
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return the seed this stream was created with
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Derives an independent stream from the seed of this stream and an index. The result does
+	 * not depend on how many numbers have been drawn from this stream.
+	 * @param index   a row, block or band number
+	 * @return        a new GlitchRandom
+	 */
+	public GlitchRandom split(long index) {
+		return new GlitchRandom(mix(seed + mix((index + 1) * GAMMA)));
+	}
+
+	/**
+	 * @return the next 64 random bits
+	 */
+	public long nextLong() {
+		state += GAMMA;
+		return mix(state);
+	}
+
+	/**
+	 * @param bound   upper bound, must be positive
+	 * @return        a random int in the range 0..bound-1
+	 */
+	public int nextInt(int bound) {
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @return a random float in the range 0..1, not including 1
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * @return a random double in the range 0..1, not including 1
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Same contract as PApplet.random(high).
+	 * @param high   upper bound
+	 * @return       a random float from 0 up to but not including high
+	 */
+	public float random(float high) {
+		if (high == 0 || high != high) return 0;
+		float value = 0;
+		do {
+			value = nextFloat() * high;
+		} while (value == high);
+		return value;
+	}
+
+	/**
+	 * Same contract as PApplet.random(low, high).
+	 * @param low    lower bound
+	 * @param high   upper bound
+	 * @return       a random float from low up to but not including high
+	 */
+	public float random(float low, float high) {
+		if (low >= high) return low;
+		float diff = high - low;
+		return random(diff) + low;
+	}
+}
@@ -64,7 +64,7 @@ package net.paulhertz.glitchsort;
 //    fixed this. You can drag it a little bigger.
 // 4. Audify ('/' and '\' is new and still kludgy, but the bugs that would cause a crash in 
 //   1.0b7 pre-release "c" seem to have been fixed.
-// 5. The Minim library routines I use for FFT are now deprecated, but functional. 
+// 5. The Minim library routines I use for audio are now deprecated, but functional. FFTs of pixel blocks use RealFFT.
 // 6. There must be other issues. 
 
 
@@ -123,6 +123,7 @@ import static net.paulhertz.glitchsort.GlitchConstants.*;
 // press '2' to select shell sort 
 // press '3' to select bubble sort
 // press '4' to select insert sort
+// press '`' to toggle introsort in quick sort, off for the look of the original quick sort
 // press 'a' to change sort order to ascending or descending
 // press 'b' to toggle random breaks in sorters
 // press 'x' to toggle color channel swapping (glitchy!)
@@ -229,6 +230,12 @@ public class GlitchSort extends PApplet {
 	PImage fitImg;
 	/** a snapshot of the primary image, used as an extended undo buffer and for the "munge" operation */
 	PImage snapImg;
+	/** counts edits to img, so that data derived from it, such as spectralCache, can tell when it is out of date */
+	int imageVersion = 0;
+	/** true if equalizer and statistical FFTs should work from cached spectra of the image, see SpectralCache */
+	boolean isSpectralCache = false;
+	/** spectra of the blocks of img, used by eqFFT() and statFFT() when isSpectralCache is true */
+	SpectralCache spectralCache;
 	/** true if image should fit screen, otherwise false */
 	boolean isFitToScreen = false;
 	/** maximum width for the display window */
@@ -262,6 +269,28 @@ public class GlitchSort extends PApplet {
 	/** true if pixels that are exchanged in sorting swap a pair of channels, creating color artifacts */
 	boolean isSwapChannels = false;
 	float swapWeight = 1.0f;
+	/** true if sorters should project pixels onto precomputed keys, much faster when we aren't swapping channels */
+	boolean isKeyedSort = true;
+	/** true if quick sort should use introsort, false for the original recursive quick sort */
+	boolean isIntroSort = true;
+	/** true if bands of rows, and blocks of scanner-based effects, should be processed in parallel on all available processors */
+	boolean isParallelSort = false;
+	/** runs blocks of zigzag, Hilbert scan, FFT and shift effects, in parallel if isParallelSort is true */
+	TileExecutor tiles = new TileExecutor();
+	/** source of random numbers for the current command, see newCommandRandom() */
+	GlitchRandom rand = new GlitchRandom(System.nanoTime());
+	/** if true, command seeds are derived from baseSeed, so that a sequence of commands can be reproduced */
+	boolean isFixedSeed = false;
+	/** true if hue, saturation and brightness should come from a lookup table, see ColorSpace */
+	boolean isHSBTable = false;
+	/** seed for reproducible sequences of commands, see setRandomSeed() */
+	long baseSeed = 0;
+	/** number of commands since baseSeed was set */
+	long seedCount = 0;
+	/** comparisons, exchanges, breaks and timing for sorting commands, also available through JMX */
+	SortMetrics metrics;
+	/** if true, metrics for each sorting command are appended to a CSV log, see SortMetrics */
+	boolean isLogMetrics = false;
 	/** an array of row numbers for the horizontal lines of pixels, used when sorting */
 	int[] rowNums;
 	/** the current row of pixels being sorted */
@@ -322,9 +351,9 @@ public class GlitchSort extends PApplet {
 	// -------- FFT -------- //
 	Minim minim;
 	Minim minim2;
-	FFT statFFT;
+	Spectrum statFFT;
 	// currently we aren't using eqFFT, statFFT does all the work
-	FFT eqFFT;
+	Spectrum eqFFT;
 	int zigzagBlockWidth = 128;
 	int statFFTBlockWidth = 64;
 	int eqFFTBlockWidth = 64;
@@ -340,6 +369,8 @@ public class GlitchSort extends PApplet {
 	public float eqScale = 1;
 	public float eqGain = 1;
 	float[] eq;
+	/** scaling factor for each bin of statFFT, calculated from eq and bandList by calculateEqGains() */
+	float[] eqGains;
 	//* array to store average amplitude for each range of bands in averaged FFT */
 	double[] binTotals;
 	//* array to store band indices in averaged FFT band, has some problems */
@@ -415,6 +446,8 @@ public class GlitchSort extends PApplet {
 	int zigzagFloor = 8;
 	/** percentage of blocks that will be zigzag sorted */
 	float zigzagPercent = 100.0f;
+	/** images with more pixels than this are scanned in windows by GilbertStream, not with a table for the whole image */
+	int streamScanPixels = 1 << 22;
 	/** default is random orientations for zigzag sorting */
 	ZigzagStyle zigzagStyle = ZigzagStyle.RANDOM;
 	
@@ -457,6 +490,14 @@ public class GlitchSort extends PApplet {
 		// the primary tool for sorting
 		sortTool = new SortSelector(this);
 		sortTool.setRandomBreak(randomBreak);
+		// metrics for sorting commands
+		metrics = new SortMetrics();
+		metrics.setCsvLogging(isLogMetrics);
+		metrics.register();
+		sortTool.setMetrics(metrics);
+		// a base seed printed in an earlier session, -Dglitchsort.seed=<base seed>, reproduces its commands
+		Long seed = Long.getLong("glitchsort.seed");
+		if (null != seed) setRandomSeed(seed);
 		// initial order of color channels for sorting
 		compOrder = CompOrder.values()[compOrderIndex];
 		// initialize number formatters
@@ -530,12 +571,13 @@ public class GlitchSort extends PApplet {
 		minim = new Minim(this);
 		// we process square blocks of pixels as if they were an audio signal
 		statBufferSize = statFFTBlockWidth * statFFTBlockWidth;
-		statFFT = new FFT(statBufferSize, sampleRate);
+		statFFT = new RealFFT(statBufferSize, sampleRate);
 		// we do our own calculation of logarithmic bands
 		calculateEqBands();
 		// calculateEqBands sets the variable calculatedBands
 		eq = new float[calculatedBands];
 		java.util.Arrays.fill(eq, 0);
+		calculateEqGains();
 	}
 	
 	/**
@@ -557,7 +599,7 @@ public class GlitchSort extends PApplet {
 		l11.setText("Block Size = "+ statFFTBlockWidth);
 		// we process square blocks of pixels as if they were an audio signal
 		statBufferSize = statFFTBlockWidth * statFFTBlockWidth;
-		statFFT = new FFT(statBufferSize, sampleRate);
+		statFFT = new RealFFT(statBufferSize, sampleRate);
 		println("  fft timesize = "+ statFFT.timeSize());
 		// we do our own calculation of logarithmic bands
 		calculateEqBands();
@@ -568,6 +610,7 @@ public class GlitchSort extends PApplet {
 		for (int i = 0; i < eq.length; i++) {
 			eq[i] = bins[i];
 		}
+		calculateEqGains();
 		// create a new equalizer on the FFT control panel
 		// setupEqualizer(eqPos, eqH, eqMax, eqMin);
 		cpm.showEqualizerBands();
@@ -625,11 +668,14 @@ public class GlitchSort extends PApplet {
 		println("press 't' to turn the image 90 clockwise");
 		println("press 'g' to sort the pixels (glitch)");
 		println("press 'l' to sort in zigzag-scanned blocks");
+		println("press 'e' to sort segments of a Gilbert scan of the entire image");
+		println("press 'E' to apply equalizer FFT along a Gilbert scan of the entire image");
 		println("press 'z' to undo the last action");
 		println("press '1' to select quick sort");
 		println("press '2' to select shell sort");
 		println("press '3' to select bubble sort");
 		println("press '4' to select insert sort");
+		println("press '`' to toggle introsort in quick sort, off for the look of the original quick sort");
 		println("press 'a' to change sort order to ascending or descending");
 		println("press 'b' to toggle random breaks in sorters");
 		println("press 'x' to toggle color channel swapping (glitchy!)");
@@ -652,6 +698,11 @@ public class GlitchSort extends PApplet {
 		println("press 'm' to munge the current image with the most recent snapshot and the undo buffer");
 		println("press 'j' to apply equalizer FFT");
 		println("press 'k' to apply statistical FFT");
+		println("press '#' to toggle Hilbert or zigzag scan for FFT");
+		println("press '^' to step through zigzag, Hilbert, Morton, Peano and L-system scans for FFT and shifts");
+		println("press '@' to step through L-system curves, '$' to step through their depths");
+		println("press '~' to toggle cached spectra for equalizer and statistical FFT");
+		println("press '!' to fix random seeds to the last printed base seed, press again to release");
 		println("press '/' to turn audify on and execute commands on a single block of pixels");
 		println("press '\' to turn audify off");
 		println("press '_' to turn 90 degrees and execute last command, four times");
@@ -1067,43 +1118,24 @@ public class GlitchSort extends PApplet {
 		zzBloxSeries();
 	}
 	
-	ArrayList<PVector> hilbertPoints = new ArrayList<PVector>();
 	boolean isHilbertScan = false;
-	public void runHilbert(int depth) {
-		StringBuffer hilb = hilbert(depth);
-		int step = 1;
-		Turtle turtle = new Turtle();
-		turtle.setTurtleX(0);
-		turtle.setTurtleY(0);
-		hilbertPoints.add(new PVector((float) turtle.getTurtleX(), (float) turtle.getTurtleY()));
-		for (int i = 0; i < hilb.length(); i++) {
-			char ch = hilb.charAt(i);
-			switch(ch) {
-			case '+' : {
-				turtle.turn(radians(90));
-				break;
-			}
-			case '-' : {
-				turtle.turn(radians(-90));
-				break;
-			}
-			case 'F' : {
-				turtle.move(step);
-				hilbertPoints.add(new PVector((float) turtle.getTurtleX(), (float) turtle.getTurtleY()));
-				break;
-			}
-			default: {
-				
-			}
-			}
-		}
-		/*
-		for (PVector vec : hilbertPoints) {
-			println(Math.round(vec.x), Math.round(vec.y));
-		}
-		*/
+	/** scan for FFT, shift and audio blocks, MORTON, PEANO and LSYSTEM override isHilbertScan, see getScanType() */
+	ScanType scanType = ScanType.ZIGZAG;
+	/** curve for LSYSTEM scans */
+	LSystemCurve lsystemCurve = LSystemCurve.GOSPER;
+	/** depth of recursion for LSYSTEM scans */
+	int lsystemDepth = 4;
+	/**
+	 * Compiles the Hilbert curve L-system to a scanner, see LSystemScanner.
+	 * @param depth   depth of recursion
+	 * @return        the scanner
+	 */
+	public LSystemScanner runHilbert(int depth) {
+		LSystemScanner hilb = LSystemScanner.hilbert(depth);
 		println("-------- hilbertPoints depth = "+ depth);
-		println("-------- hilbertPoints length = "+ hilbertPoints.size());
+		println("-------- hilbertPoints length = "+ hilb.getSize());
+		println("-------- "+ ScannerCache.getStats());
+		return hilb;
 	}
 	
 	/**
@@ -1178,6 +1210,7 @@ public class GlitchSort extends PApplet {
 		int zflag = 0;
 		// lim = 1024;
 		println("---- Hilbert animation for blocksize "+ blockSize +" with "+ lim +" frames ----");		
+		imageVersion++;
 		int[] pix = zz.pluck(img.pixels, img.width, img.height, 0, 0);
 		for (int i = 0; i < lim; i++) {
 			// store the previous frame in oldPix
@@ -1339,7 +1372,7 @@ public class GlitchSort extends PApplet {
 				else incrementColorQuantize(false);      // decrement colorQuantize
 			}
 		}
-		if ("gl<>9kjdGLKJD6".indexOf(key) > -1) lastCommand = key;
+		if ("gl<>9kjdGLKJD6e".indexOf(key) > -1) lastCommand = key;
 		if (this.audioIsRunning) {
 			this.glitchSignal.setIsUpdate(true);
 		}
@@ -1365,6 +1398,23 @@ public class GlitchSort extends PApplet {
 		else if (ch == '#') {
 			setIsHilbertScan(!isHilbertScan, false);
 		}
+		else if (ch == '^') {
+			ScanType[] types = ScanType.values();
+			setScanType(types[(getScanType().ordinal() + 1) % types.length]);   // step through scans for FFT
+		}
+		else if (ch == '@') {
+			LSystemCurve[] curves = LSystemCurve.values();
+			setLSystemCurve(curves[(lsystemCurve.ordinal() + 1) % curves.length]);   // step through L-system curves
+		}
+		else if (ch == '$') {
+			setLSystemDepth(lsystemDepth % LSystemScanner.maxDepth(lsystemCurve) + 1);   // step through L-system depths
+		}
+		else if (ch == '!') {
+			setFixedSeed(!isFixedSeed);              // fix random seeds to the last printed base seed, or release them
+		}
+		else if (ch == '~') {
+			setSpectralCache(!isSpectralCache);      // toggle cached spectra for equalizer and statistical FFT
+		}
 		else if (ch == '1') {
 			setSorter(SorterType.QUICK, false);      // use quick sort 
 		}
@@ -1377,6 +1427,9 @@ public class GlitchSort extends PApplet {
 		else if (ch == '4') {
 			setSorter(SorterType.INSERT, false);     // use insert sort
 		}
+		else if (ch == '`') {
+			setIntroSort(!isIntroSort, false);       // toggle introsort in quick sort
+		}
 		else if (ch == 'g') {
 			sortPixels();                            // 'g' for glitch: sort with current algorithm
 		}
@@ -1487,6 +1540,12 @@ public class GlitchSort extends PApplet {
 			if (audioIsRunning) glitchSignal.decode(ch);
 			else hilbertScan();                                // perform a zigzag sort
 		}
+		else if (ch == 'e') {
+			gilbertScan();                           // sort segments of a Gilbert curve over the whole image
+		}
+		else if (ch == 'E') {
+			gilbertEqFFT();                          // equalizer FFT in windows along a Gilbert curve over the whole image
+		}
 		else if (ch == 'k') {
 			statFFT();                         // perform an FFT using statistical interface settings
 		}
@@ -2012,8 +2071,10 @@ public class GlitchSort extends PApplet {
 		// and pulling the values from local variables. It would be more efficient to do this only on control panel changes. 
 		backup();
 		img.loadPixels();
+		newCommandRandom("sort");
 		// set sorting to current settings
 		this.sortTool.setControlState();
+		beginSortMetrics("sort", lineCount);
 		if (isCycleGlitch) {
 			println("multi cycle");
 			IntRange range;
@@ -2029,14 +2090,19 @@ public class GlitchSort extends PApplet {
 			}
 			// include upper range (@bugfix, 2014-1-8)
 			if (lineCount == 1) {
+				// rows in rowNums are all different, so they can be sorted in parallel
+				int[] bands = new int[2 * (range.upper - range.lower + 1)];
+				int b = 0;
 				for (int i = range.lower; i <= range.upper; i++) {
 					int n = rowNums[i];
 					if (verbose) println("sorting row "+ n +" at index "+ i);
 					row++;
 					int l = n * img.width;
 					int r = l + img.width - 1;
-					sortTool.sort(img.pixels, l, r);
+					bands[b++] = l;
+					bands[b++] = r;
 				}
+				sortTool.sortBands(img.pixels, bands, isParallelSort);
 			}
 			else {
 				// TODO random multi-line cycle sorting
@@ -2058,17 +2124,22 @@ public class GlitchSort extends PApplet {
 		else {
 			int rowMax = img.height;
 			int i = 0;
+			int[] bands = new int[2 * ((rowMax + lineCount - 1) / lineCount)];
+			int b = 0;
 			while (i < rowMax) {
 				int n = i + lineCount;
 				if (n >= rowMax) n = rowMax - 1;
 				int l = i * img.width;
 				int r = (n * img.width) - 1;
 				if (verbose) println("sorting row "+ i +" to "+ n);
-				sortTool.sort(img.pixels, l, r);
+				bands[b++] = l;
+				bands[b++] = r;
 				i += lineCount;
 			}
+			sortTool.sortBands(img.pixels, bands, isParallelSort);
 			shuffle(rowNums);
 		}
+		if (null != metrics) metrics.endRun();
 		img.updatePixels();
 		fitPixels(isFitToScreen, false);
 	}
@@ -2078,6 +2149,8 @@ public class GlitchSort extends PApplet {
 	 */
 	public void backup() {
 		bakImg = copyImagePixels(img);
+		// callers are about to edit img
+		imageVersion++;
 	}
 
 	/**
@@ -2088,6 +2161,7 @@ public class GlitchSort extends PApplet {
 		PImage tempImg = copyImagePixels(img);
 		img = bakImg;
 		bakImg = tempImg;
+		imageVersion++;
 		// println("--- restore");
 		fitPixels(isFitToScreen, false);
 		// if the display image and the backup image are different sizes, we need to reset rows and translation
@@ -2114,6 +2188,7 @@ public class GlitchSort extends PApplet {
 	public void unsnap() {
 		if (null == snapImg) return;
 		img = copyImagePixels(snapImg);
+		imageVersion++;
 		fitPixels(isFitToScreen, false);
 		// if the display image and the snapshot image are different sizes, we need to reset rows and translation
 		loadRowNums();
@@ -2184,6 +2259,7 @@ public class GlitchSort extends PApplet {
 			}
 		}
 		println("munged -----");
+		imageVersion++;
 		img.updatePixels();
 		fitPixels(isFitToScreen, false);
 	}
@@ -2640,53 +2716,53 @@ public class GlitchSort extends PApplet {
 	}
 	
 	/**
-	 * Shifts pixel arrays from zigzag or Hilbert scans left by an arbitrary number of pixels.
+	 * Shifts pixel arrays from the scan selected by getScanType() left by an arbitrary number of pixels.
 	 * @param shift   number of pixels to shift 
 	 */
 	public void shiftScanLeft(int shift) {
 		int order = (int) Math.sqrt(statBufferSize);
 		this.statFFTBlockWidth = order;
-		PixelScannerINF zz;
-		if (isHilbertScan) {
-			int depth = (int) (Math.log(order)/Math.log(2));
-			zz = new HilbertScanner(depth);
-			// println("Hilbert depth = "+ depth);
-		}
-		else {
-			zz = new Zigzagger(order);
-			// println("Zigzag order = "+ order);
+		PixelScannerINF zz = createScanner(order, false);
+		// a Peano scan may be smaller than order, an L-system scan may have any width and height
+		final int blockWidth = zz.getBlockWidth();
+		final int blockHeight = zz.getBlockHeight();
+		final int dw = (img.width / blockWidth);
+		int dh = (img.height / blockHeight);
+		if (0 == dw || 0 == dh) {
+			println("---- a "+ blockWidth +" x "+ blockHeight +" scan block doesn't fit the image");
+			return;
 		}
-		int dw = (img.width / order);
-		int dh = (img.height / order);
-		int w = dw * order;
-		int h = dh * order;
-		int ow = (img.width - w) / 2;
-		int oh = (img.height - h) / 2;
+		int w = dw * blockWidth;
+		int h = dh * blockHeight;
+		final int ow = (img.width - w) / 2;
+		final int oh = (img.height - h) / 2;
 		backup();
 		img.loadPixels();
-		for (int y = 0; y < dh; y++) {
-			for (int x = 0; x < dw; x++) {
-				int mx = x * order + ow;
-				int my = y * order + oh;
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-				// do stuff to pix here
-	  		if (shift < 0) {
-	  			shift = pix.length - ((-shift) % pix.length);
-	  		}
-	  		else {
-	  			shift = shift % pix.length;			
-	  		}
-				if (isHilbertScan) {
-					rotateLeft(pix, shift);    			
-					//rotateLeft(pix, pix.length/16);
-				}
-				else {
-					rotateLeft(pix, shift);    			
-				}
-				// end stuff
-				zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-			}
+		final int len = zz.getSize();
+		if (shift < 0) {
+			shift = len - ((-shift) % len);
 		}
+		else {
+			shift = shift % len;			
+		}
+		final int blockShift = shift;
+		final PixelScannerINF scanner = zz;
+		tiles.run(dw * dh, isParallelSort, new TileExecutor.TileWorkerFactory() {
+			public TileExecutor.TileWorker newWorker() {
+				return new TileExecutor.TileWorker() {
+					PixelScannerINF zz = newScanner(scanner);
+					int[] pix = new int[len];
+					
+					public void process(int tile) {
+						int mx = (tile % dw) * blockWidth + ow;
+						int my = (tile / dw) * blockHeight + oh;
+						zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
+						rotateLeft(pix, blockShift);    			
+						zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+					}
+				};
+			}
+		});
 		img.updatePixels();
 		fitPixels(isFitToScreen, false);
 	}
@@ -2879,7 +2955,7 @@ public class GlitchSort extends PApplet {
 	
 	/**
 	 * TODO
-	 * Sets the sorting method (QUICK, SHELL, BUBBLE, INSERT) used by sortTool.
+	 * Sets the sorting method (QUICK, SHELL, BUBBLE, INSERT, RADIX, MERGE) used by sortTool.
 	 * @param type   the type of sorting method to use
 	 * @param isFromControlPanel   true if call is from a control panel interaction, false otherwise
 	 */
@@ -2947,6 +3023,58 @@ public class GlitchSort extends PApplet {
 		}
 	}
 
+	/**
+	 * @param val   true if bands of rows and blocks of scanner-based effects should be processed in parallel 
+	 * @param isFromControlPanel   true if call is from a control panel interaction, false otherwise
+	 */
+	public void setParallelSort(boolean val, boolean isFromControlPanel) {
+		if (!isFromControlPanel) {
+			if (val) ((CheckBox) cpm.getControl().getGroup("Sorting")).activate("Parallel");
+			else ((CheckBox) cpm.getControl().getGroup("Sorting")).deactivate("Parallel");
+		}
+		else {
+			if (isParallelSort == val) return;
+			isParallelSort = val;
+			println("Parallel sorting and block processing is "+ isParallelSort);
+		}
+	}
+
+	/**
+	 * Turns the ColorSpace lookup table for HSB values on or off. The table speeds up HSB sorting and 
+	 * L, H and S FFT glitches, but takes ColorSpace.TABLE_BYTES (64 MB) of memory.
+	 * @param val   true if HSB values should come from a lookup table 
+	 * @param isFromControlPanel   true if call is from a control panel interaction, false otherwise
+	 */
+	public void setHSBTable(boolean val, boolean isFromControlPanel) {
+		if (!isFromControlPanel) {
+			if (val) ((CheckBox) cpm.getControl().getGroup("ColorTable")).activate(0);
+			else ((CheckBox) cpm.getControl().getGroup("ColorTable")).deactivate(0);
+		}
+		else {
+			if (isHSBTable == val) return;
+			isHSBTable = val;
+			ColorSpace.setUseTable(isHSBTable);
+			println("HSB lookup table is "+ isHSBTable +", "+ (ColorSpace.TABLE_BYTES >> 20) +" MB");
+		}
+	}
+
+	/**
+	 * @param val   true if quick sort should use introsort, false for the original recursive quick sort, 
+	 *              whose pivots, and so whose glitches with random breaks, differ from introsort's
+	 * @param isFromControlPanel   true if call is from a control panel interaction, false otherwise
+	 */
+	public void setIntroSort(boolean val, boolean isFromControlPanel) {
+		if (!isFromControlPanel) {
+			if (val) ((CheckBox) cpm.getControl().getGroup("Quicksort")).activate(0);
+			else ((CheckBox) cpm.getControl().getGroup("Quicksort")).deactivate(0);
+		}
+		else {
+			if (isIntroSort == val) return;
+			isIntroSort = val;
+			println("Introsort is "+ isIntroSort);
+		}
+	}
+
 	/**
 	 * @param val   true if color channels should be swapped when sorting (more glitching). 
 	 * @param isFromControlPanel   true if call is from a control panel interaction, false otherwise
@@ -3430,6 +3558,8 @@ public class GlitchSort extends PApplet {
 			else ((CheckBox) cpm.getControl().getGroup("hilbert")).deactivate(0);
 		}
 		else {
+			// the checkbox also switches back from a Morton or Peano scan
+			scanType = val ? ScanType.HILBERT : ScanType.ZIGZAG;
 			if (isHilbertScan == val) return;
 			isHilbertScan = val;
 			if (isHilbertScan) println("Hilbert scan will be used for FFT");
@@ -3437,6 +3567,105 @@ public class GlitchSort extends PApplet {
 		}
 	}
 	
+	/**
+	 * @return the scan used for FFT, shift and audio blocks: MORTON, PEANO or LSYSTEM if one was selected,
+	 *         otherwise HILBERT or ZIGZAG according to isHilbertScan
+	 */
+	public ScanType getScanType() {
+		if (ScanType.MORTON == scanType || ScanType.PEANO == scanType || ScanType.LSYSTEM == scanType) return scanType;
+		return isHilbertScan ? ScanType.HILBERT : ScanType.ZIGZAG;
+	}
+	
+	/**
+	 * Selects the scan used for FFT, shift and audio blocks. HILBERT and ZIGZAG set the Hilbert checkbox.
+	 * @param type   the ScanType to use
+	 */
+	public void setScanType(ScanType type) {
+		if (ScanType.HILBERT == type || ScanType.ZIGZAG == type) {
+			scanType = type;
+			setIsHilbertScan(ScanType.HILBERT == type, false);
+		}
+		else {
+			scanType = type;
+			if (ScanType.LSYSTEM == type) println(lsystemCurve +" L-system scan, depth "+ lsystemDepth +", will be used for shifts");
+			else println(type +" scan will be used for FFT");
+		}
+	}
+	
+	/**
+	 * Selects the curve for LSYSTEM scans, and clamps lsystemDepth to the curve's greatest depth.
+	 * @param curve   an LSystemCurve
+	 */
+	public void setLSystemCurve(LSystemCurve curve) {
+		lsystemCurve = curve;
+		setLSystemDepth(lsystemDepth);
+	}
+	
+	/**
+	 * Sets the depth of recursion for LSYSTEM scans, clamped to 1..LSystemScanner.maxDepth(lsystemCurve).
+	 * @param depth   depth of recursion
+	 */
+	public void setLSystemDepth(int depth) {
+		lsystemDepth = Math.max(1, Math.min(depth, LSystemScanner.maxDepth(lsystemCurve)));
+		LSystemScanner ls = LSystemScanner.create(lsystemCurve, lsystemDepth);
+		println("L-system scan: "+ lsystemCurve +" depth "+ lsystemDepth +", block "+ ls.getBlockWidth() +" x "
+				+ ls.getBlockHeight() +", "+ ls.getSize() +" pixels scanned");
+	}
+	
+	/**
+	 * Creates a pixel scanner of the type returned by getScanType(). Peano scans have edges that are powers of 3:
+	 * where the scan must fill a buffer of exactly order * order samples, as for FFT and audio, a Hilbert scan is
+	 * used instead, otherwise the largest Peano scan that fits is used and callers should step by getBlockWidth().
+	 * L-system scans are sized by lsystemCurve and lsystemDepth rather than order, their blocks need not be 
+	 * square or fully covered, so they are only used where isExactSize is false, and callers should step by 
+	 * getBlockWidth() and getBlockHeight().
+	 * @param order         the number of pixels on an edge of the block, a power of 2 except for zigzag scans
+	 * @param isExactSize   true if the scan must cover exactly order * order pixels
+	 * @return a PixelScannerINF
+	 */
+	public PixelScannerINF createScanner(int order, boolean isExactSize) {
+		int depth = (int) (Math.log(order)/Math.log(2));
+		switch (getScanType()) {
+		case HILBERT: {
+			return new HilbertScanner(depth);
+		}
+		case MORTON: {
+			return new MortonScanner(depth);
+		}
+		case PEANO: {
+			if (!isExactSize) return new PeanoScanner(PeanoScanner.depthFor(order));
+			println("Peano scan can't fill a block of "+ order +" x "+ order +" pixels, using Hilbert scan");
+			return new HilbertScanner(depth);
+		}
+		case LSYSTEM: {
+			if (!isExactSize) return LSystemScanner.create(lsystemCurve, lsystemDepth);
+			println("L-system scan can't fill a block of "+ order +" x "+ order +" pixels, using Hilbert scan");
+			return new HilbertScanner(depth);
+		}
+		default: {
+			return new Zigzagger(order);
+		}
+		}
+	}
+	
+	/**
+	 * @param zz   a scanner returned by createScanner()
+	 * @return     a new scanner of the same class, size and orientation as zz, 
+	 *             for a thread that processes tiles (see TileExecutor)
+	 * @throws IllegalArgumentException if zz is not a scanner that createScanner() returns
+	 */
+	public PixelScannerINF newScanner(PixelScannerINF zz) {
+		PixelScannerINF scanner;
+		if (zz instanceof HilbertScanner) scanner = new HilbertScanner(zz.getDepth());
+		else if (zz instanceof MortonScanner) scanner = new MortonScanner(zz.getDepth());
+		else if (zz instanceof PeanoScanner) scanner = new PeanoScanner(zz.getDepth());
+		else if (zz instanceof LSystemScanner) return LSystemScanner.copy((LSystemScanner) zz);
+		else if (zz instanceof Zigzagger) scanner = new Zigzagger(zz.getBlockWidth());
+		else throw new IllegalArgumentException("newScanner can't copy a "+ zz.getClass().getSimpleName());
+		scanner.setOrientation(zz.getOrientation());
+		return scanner;
+	}
+	
 	public void shiftEqBinsLeft() {
 		float[] bins = cpm.getEqualizerValues();
 		for (int i = 0; i < bins.length - 1; i++) {
@@ -3459,6 +3688,7 @@ public class GlitchSort extends PApplet {
 			Slider slider = (Slider) cpm.getControl().getController(token);
 			slider.setValue(bins[i]);
 		}	
+		calculateEqGains();
 	}
 	
 	
@@ -3499,16 +3729,25 @@ public class GlitchSort extends PApplet {
     /*                                          */
     /********************************************/
 	
+	/**
+	 * Shuffles an array of integers into random order, drawing on the random numbers for the current command.
+	 * @param intArray an array of <code>int</code>s, changed on exit
+	 */
+	public void shuffle(int[] intArray) {
+		shuffle(intArray, rand);
+	}
+	
 	/**
 	 * Shuffles an array of integers into random order.
 	 * Implements Richard Durstenfeld's version of the Fisher-Yates algorithm, popularized by Donald Knuth.
 	 * see http://en.wikipedia.org/wiki/Fisher-Yates_shuffle
 	 * @param intArray an array of <code>int</code>s, changed on exit
+	 * @param rnd      source of random numbers
 	 */
-	public void shuffle(int[] intArray) {
+	public void shuffle(int[] intArray, GlitchRandom rnd) {
 		for (int lastPlace = intArray.length - 1; lastPlace > 0; lastPlace--) {
 			// Choose a random location from 0..lastPlace
-			int randLoc = (int) (random(lastPlace + 1));
+			int randLoc = rnd.nextInt(lastPlace + 1);
 			// Swap items in locations randLoc and lastPlace
 			int temp = intArray[randLoc];
 			intArray[randLoc] = intArray[lastPlace];
@@ -3516,6 +3755,70 @@ public class GlitchSort extends PApplet {
 		}
 	}
 
+	/**
+	 * Starts a new stream of random numbers for a command and prints its seed. With a fixed seed 
+	 * (see setRandomSeed), the seed of each command is derived from baseSeed and the number of 
+	 * commands since it was set, so the same sequence of commands produces the same images. 
+	 * Otherwise the seed comes from the clock, and the command can be repeated by fixing the seed with 
+	 * the '!' key, or in a later session by passing the base seed to setRandomSeed() or -Dglitchsort.seed.
+	 * @param command   name of the command, for the console
+	 * @return          the new stream, also stored in rand
+	 */
+	public GlitchRandom newCommandRandom(String command) {
+		long seed;
+		if (isFixedSeed) {
+			seed = GlitchRandom.mix(baseSeed + seedCount++);
+		}
+		else {
+			seed = System.nanoTime();
+			baseSeed = seed;
+			seedCount = 1;
+			seed = GlitchRandom.mix(seed);
+		}
+		rand = new GlitchRandom(seed);
+		println("---- "+ command +" seed = "+ seed +", base seed = "+ baseSeed +", count = "+ (seedCount - 1));
+		return rand;
+	}
+	
+	/**
+	 * Fixes the seed for the random numbers of the commands that follow. 
+	 * @param seed   a base seed, as printed by newCommandRandom()
+	 */
+	public void setRandomSeed(long seed) {
+		isFixedSeed = true;
+		baseSeed = seed;
+		seedCount = 0;
+		println("---- random seed set to "+ seed);
+	}
+	
+	/**
+	 * Sets isFixedSeed. If true, the seed is fixed to the last base seed printed by newCommandRandom(), 
+	 * so the commands that follow repeat the last command, or the sequence of commands since the seed 
+	 * was last fixed. If false, each command gets its seed from the clock.
+	 * @param isFixedSeed   true if commands should get their seeds from baseSeed
+	 */
+	public void setFixedSeed(boolean isFixedSeed) {
+		if (isFixedSeed) {
+			setRandomSeed(baseSeed);
+			return;
+		}
+		this.isFixedSeed = false;
+		println("---- fixed random seed is "+ isFixedSeed);
+	}
+
+	/**
+	 * Starts collecting metrics for a sorting command, after sortTool.setControlState() has been called.
+	 * When random breaks are off, sortTool uses radix sort, so that is the sorter we report.
+	 * @param command     name of the command
+	 * @param lines       number of rows in each band, 0 if the command sorts blocks
+	 */
+	public void beginSortMetrics(String command, int lines) {
+		if (null == metrics) return;
+		SorterType type = randomBreak ? sortTool.sorter.getSorterType() : SorterType.RADIX;
+		metrics.beginRun(command, type.name(), compOrder.name(), randomBreak ? breakPoint : 1000, 
+				lines, img.width, img.height);
+	}
+
 	/**
 	 * Breaks a Processing color into R, G and B values in an array.
 	 * @param argb   a Processing color as a 32-bit integer 
@@ -4870,60 +5173,77 @@ public class GlitchSort extends PApplet {
     public void formantFFT(Formant formant) {
     	int order = (int) Math.sqrt(statBufferSize);
     	this.statFFTBlockWidth = order;
-    	PixelScannerINF zz;
-    	if (isHilbertScan) {
-    		int depth = (int) (Math.log(order)/Math.log(2));
-    		zz = new HilbertScanner(depth);
-    		println("Hilbert depth = "+ depth);
-    	}
-    	else {
-    		zz = new Zigzagger(order);
-    		println("Zigzag order = "+ order);
-    	}
-    	int dw = (img.width / order);
+    	PixelScannerINF zz = createScanner(order, true);
+    	println(zz.getClass().getSimpleName() +" order = "+ zz.getBlockWidth());
+    	final int blockWidth = order;
+    	final int dw = (img.width / order);
     	int dh = (img.height / order);
     	int w = dw * order;
     	int h = dh * order;
-    	int ow = (img.width - w) / 2;
-    	int oh = (img.height - h) / 2;
+    	final int ow = (img.width - w) / 2;
+    	final int oh = (img.height - h) / 2;
     	backup();
     	img.loadPixels();
-    	for (int y = 0; y < dh; y++) {
-    		for (int x = 0; x < dw; x++) {
-    			int mx = x * order + ow;
-    			int my = y * order + oh;
-    			int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-    			if (isRunFormantRGB) {
-    				fftRGBFormantGlitch(pix, formant);
-    			}
-    			else {
-    				// the samples are returned by fftFormantGlitch, but they are modified already
-    				// TODO: HSL processing modifies the pix buffer as we go, we should try to avoid that
-    				if (isEqGlitchBrightness) fftFormantGlitch(pix, ChannelNames.L, formant);
-    				if (isEqGlitchHue) fftFormantGlitch(pix, ChannelNames.H, formant);
-    				if (isEqGlitchSaturation) fftFormantGlitch(pix, ChannelNames.S, formant);
-    				if (isEqGlitchRed) fftFormantGlitch(pix, ChannelNames.R, formant);
-    				if (isEqGlitchGreen) fftFormantGlitch(pix, ChannelNames.G, formant);
-    				if (isEqGlitchBlue) fftFormantGlitch(pix, ChannelNames.B, formant);
-    			}
-    			zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+    	final Formant blockFormant = formant;
+    	final PixelScannerINF scanner = zz;
+    	// each thread gets its own scanner, FFT and buffer
+    	tiles.run(dw * dh, isParallelSort, new TileExecutor.TileWorkerFactory() {
+    		public TileExecutor.TileWorker newWorker() {
+    			return new TileExecutor.TileWorker() {
+    				PixelScannerINF zz = newScanner(scanner);
+    				RealFFT fft = new RealFFT(statBufferSize, sampleRate);
+    				RealFFT fft2 = new RealFFT(statBufferSize, sampleRate);
+    				int[] pix = new int[zz.getSize()];
+    				float[][] rgb = new float[3][zz.getSize()];
+
+    				public void process(int tile) {
+    					int mx = (tile % dw) * blockWidth + ow;
+    					int my = (tile / dw) * blockWidth + oh;
+    					zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
+    					if (isRunFormantRGB) {
+    						fftRGBFormantGlitch(pix, blockFormant, fft, fft2, rgb);
+    					}
+    					else {
+    						// the samples are returned by fftFormantGlitch, but they are modified already
+    						// TODO: HSL processing modifies the pix buffer as we go, we should try to avoid that
+    						if (isEqGlitchBrightness) fftFormantGlitch(pix, ChannelNames.L, blockFormant, fft);
+    						if (isEqGlitchHue) fftFormantGlitch(pix, ChannelNames.H, blockFormant, fft);
+    						if (isEqGlitchSaturation) fftFormantGlitch(pix, ChannelNames.S, blockFormant, fft);
+    						if (isEqGlitchRed) fftFormantGlitch(pix, ChannelNames.R, blockFormant, fft);
+    						if (isEqGlitchGreen) fftFormantGlitch(pix, ChannelNames.G, blockFormant, fft);
+    						if (isEqGlitchBlue) fftFormantGlitch(pix, ChannelNames.B, blockFormant, fft);
+    					}
+    					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+    				}
+    			};
     		}
-    	}
+    	});
     	img.updatePixels();
     	// necessary to call fitPixels to show updated image
     	fitPixels(isFitToScreen, false);
     	//		analyzeEq(false);
     }
 
+    /**
+     * Performs an FFT on the RGB channels of a supplied array of samples with statFFT, 
+     * see fftRGBFormantGlitch(samples, formant, fft).
+     * @param samples   an array of RGB values
+     * @return          the modified samples
+     */
+    public int[] fftRGBFormantGlitch(int[] samples, Formant formant) {
+    	return fftRGBFormantGlitch(samples, formant, statFFT);
+    }
+    
     /**
      * Performs an FFT on a supplied array of samples, scales frequencies using settings in the 
      * formant interface, modifies the samples and also returns the modified samples. 
      * The RGB channels are modified by the three formant frequencies.
      * 
      * @param samples   an array of RGB values
+     * @param fft       the FFT that handles the transform, each thread needs its own
      * @return          the modified samples
      */
-    public int[] fftRGBFormantGlitch(int[] samples, Formant formant) {
+    public int[] fftRGBFormantGlitch(int[] samples, Formant formant, Spectrum fft) {
     	// println(">>>>-------->>> fftRGBFormantGlitch <<<--------<<<<<");
     	float fac = formantScale;
     	float[] buf1 = null;
@@ -4933,37 +5253,37 @@ public class GlitchSort extends PApplet {
     		// convert R channel to an array of floats
     		buf1 = pullChannel(samples, ChannelNames.R);
     		// do a forward transform on the array of floats
-    		statFFT.forward(buf1);
+    		fft.forward(buf1);
     		// scale the first frequency
-    		this.fftScaleFreq(formant.freq1, fac * famp1);
+    		fft.scaleFreq(formant.freq1, fac * famp1);
     		// inverse the transform
-    		statFFT.inverse(buf1);
+    		fft.inverse(buf1);
     	}
     	if (!isMuteF2) {
     		// convert G channel to an array of floats
     		buf2 = pullChannel(samples, ChannelNames.G);
     		// do a forward transform on the array of floats
-    		statFFT.forward(buf2);
+    		fft.forward(buf2);
     		// scale the second frequency
-    		this.fftScaleFreq(formant.freq2, fac * famp2);
+    		fft.scaleFreq(formant.freq2, fac * famp2);
     		// inverse the transform
-    		statFFT.inverse(buf2);
+    		fft.inverse(buf2);
     	}
     	if (!isMuteF3) {
     		// convert B channel to an array of floats
     		buf3 = pullChannel(samples, ChannelNames.B);
     		// do a forward transform on the array of floats
-    		statFFT.forward(buf3);
+    		fft.forward(buf3);
     		// scale the second frequency
-    		this.fftScaleFreq(formant.freq3, fac * famp3);
+    		fft.scaleFreq(formant.freq3, fac * famp3);
     		// inverse the transform
-    		statFFT.inverse(buf3);
+    		fft.inverse(buf3);
     	}
     	// conditionally scale by the bias
     	if (fDCBias != 0) {
     		// println("-------- fDCBias = "+ fDCBias/1000.0f);
     		for (int j = 0; j < 16; j++) {
-    			this.fftScaleBin(0, 1 + fDCBias/1000.0f);
+    			fft.scaleBand(0, 1 + fDCBias/1000.0f);
     		}
     	}
     	// write RED samples back to buffer
@@ -4976,36 +5296,91 @@ public class GlitchSort extends PApplet {
     	return samples;
     }
     
+    /**
+     * Performs the same glitch as fftRGBFormantGlitch(samples, formant, fft), reading the unmuted RGB 
+     * channels in one pass, transforming two of them at a time with one complex FFT, and writing 
+     * them back in one pass.
+     * 
+     * @param samples   an array of RGB values
+     * @param formant   formant frequencies for the R, G and B channels
+     * @param fft       an FFT of samples.length samples, each thread needs its own
+     * @param fft2      another FFT of the same size, for the second channel of a pair
+     * @param rgb       three arrays of samples.length floats, to hold the channels
+     * @return          the modified samples
+     */
+    public int[] fftRGBFormantGlitch(int[] samples, Formant formant, RealFFT fft, RealFFT fft2, float[][] rgb) {
+    	float fac = formantScale;
+    	float[] red = isMuteF1 ? null : rgb[0];
+    	float[] green = isMuteF2 ? null : rgb[1];
+    	float[] blue = isMuteF3 ? null : rgb[2];
+    	// the unmuted channels, with the frequency and scaling factor for each
+    	float[][] bufs = new float[3][];
+    	float[] freqs = new float[3];
+    	float[] amps = new float[3];
+    	int n = 0;
+    	if (null != red) { bufs[n] = red; freqs[n] = formant.freq1; amps[n++] = fac * famp1; }
+    	if (null != green) { bufs[n] = green; freqs[n] = formant.freq2; amps[n++] = fac * famp2; }
+    	if (null != blue) { bufs[n] = blue; freqs[n] = formant.freq3; amps[n++] = fac * famp3; }
+    	pullRGB(samples, red, green, blue);
+    	int i = 0;
+    	if (n > 1) {
+    		// transform the first two channels together
+    		fft.forwardPair(bufs[0], bufs[1], fft2);
+    		fft.scaleFreq(freqs[0], amps[0]);
+    		fft2.scaleFreq(freqs[1], amps[1]);
+    		fft.inversePair(bufs[0], bufs[1], fft2);
+    		i = 2;
+    	}
+    	if (i < n) {
+    		fft.forward(bufs[i]);
+    		fft.scaleFreq(freqs[i], amps[i]);
+    		fft.inverse(bufs[i]);
+    	}
+    	pushRGB(samples, red, green, blue);
+    	return samples;
+    }
+    
+    /**
+     * Performs an FFT on a supplied array of samples with statFFT, see fftFormantGlitch(samples, chan, formant, fft).
+     * @param samples   an array of RGB values
+     * @param chan      the channel to pass through the FFT
+     * @return          the modified samples
+     */
+    public int[] fftFormantGlitch(int[] samples, ChannelNames chan, Formant formant) {
+    	return fftFormantGlitch(samples, chan, formant, statFFT);
+    }
+
     /**
      * Performs an FFT on a supplied array of samples, scales frequencies using settings in the 
      * formant interface, modifies the samples and also returns the modified samples. 
      * 
      * @param samples   an array of RGB values
      * @param chan      the channel to pass through the FFT
+     * @param fft       the FFT that handles the transform, each thread needs its own
      * @return          the modified samples
      */
-    public int[] fftFormantGlitch(int[] samples, ChannelNames chan, Formant formant) {
+    public int[] fftFormantGlitch(int[] samples, ChannelNames chan, Formant formant, Spectrum fft) {
     	// convert the selected channel to an array of floats
     	float[] buf = pullChannel(samples, chan);
     	// do a forward transform on the array of floats
-    	statFFT.forward(buf);
+    	fft.forward(buf);
     	// scale the frequencies in the fft formant frequencies
     	// TODO better code than this kludge for scaling fac DONE
     	// float fac = 2.0f * (cpm.getEqBinValue(1) + 1);
     	// float fac = formantScale > 0 ? (map(formantScale, 0, 4, 1, famp1)) : 1 + formantScale;
     	// fac = map(formantScale, -1, 4, 0, famp1);
     	float fac = formantScale;
-    	if (!isMuteF1) this.fftScaleFreq(formant.freq1, fac * famp1);
-    	if (!isMuteF2) this.fftScaleFreq(formant.freq2, fac * famp2);
-    	if (!isMuteF3) this.fftScaleFreq(formant.freq3, fac * famp3);
+    	if (!isMuteF1) fft.scaleFreq(formant.freq1, fac * famp1);
+    	if (!isMuteF2) fft.scaleFreq(formant.freq2, fac * famp2);
+    	if (!isMuteF3) fft.scaleFreq(formant.freq3, fac * famp3);
     	if (fDCBias != 0) {
     		// println("-------- fDCBias = "+ fDCBias/1000.0f);
     		for (int j = 0; j < 16; j++) {
-    			this.fftScaleBin(0, 1 + fDCBias/1000.0f);
+    			fft.scaleBand(0, 1 + fDCBias/1000.0f);
     		}
     	}
     	// inverse the transform
-    	statFFT.inverse(buf);
+    	fft.inverse(buf);
     	pushChannel(samples, buf, chan);
     	return samples;
     }
@@ -5016,22 +5391,35 @@ public class GlitchSort extends PApplet {
   /*             >>> END FORMANT SECTION <<<             */
     
     
+    /**
+     * Calculates statistical variables from frequencies in statFFT, see fftStatistics(fft, l, r, verbose, msg).
+     * @param l         left bound of bin index numbers
+     * @param r         right bound of bin index numbers
+     * @param verbose   true if output to consoles is desired, false otherwise
+     * @param msg       a message to include with output
+     * @return          an array of derived values: minimum, maximum, mean, median, standard deviation, skew.
+     */
+    public float[] fftStatistics(int l, int r, boolean verbose, String msg) {
+    	return fftStatistics(statFFT, l, r, verbose, msg);
+    }
+    
     /**
      * Calculates statistical variables from frequencies in the current FFT and returns then in an array.
      * 
+     * @param fft       an FFT that has done a forward transform
      * @param l         left bound of bin index numbers
      * @param r         right bound of bin index numbers
      * @param verbose   true if output to consoles is desired, false otherwise
      * @param msg       a message to include with output
      * @return          an array of derived values: minimum, maximum, sum, mean, median, standard deviation, skew.
      */
-    public float[] fftStatistics(int l, int r, boolean verbose, String msg) {
+    public float[] fftStatistics(Spectrum fft, int l, int r, boolean verbose, String msg) {
     	double sum = 0;
     	double squareSum = 0;
     	float[] values = new float[r - l];
     	int index = 0;
     	for (int i = l; i < r; i++) {
-    		float val = statFFT.getBand(i);
+    		float val = fft.getBand(i);
     		sum += val;
     		squareSum += val * val;
     		values[index++] = val;
@@ -5079,15 +5467,15 @@ public class GlitchSort extends PApplet {
     	int i = 0;
     	switch (chan) {
     	case L: {
-    		for (int argb : samples) buf[i++] = brightness(argb);
+    		for (int argb : samples) buf[i++] = ColorSpace.brightness(argb);
     		break;
     	}
     	case H: {
-    		for (int argb : samples) buf[i++] = hue(argb);
+    		for (int argb : samples) buf[i++] = ColorSpace.hue(argb);
     		break;
     	}
     	case S: {
-    		for (int argb : samples) buf[i++] = saturation(argb);
+    		for (int argb : samples) buf[i++] = ColorSpace.saturation(argb);
     		break;
     	}
     	case R: {
@@ -5119,37 +5507,33 @@ public class GlitchSort extends PApplet {
     	int i = 0;
     	switch (chan) {
     	case L: {
-    		colorMode(HSB, 255);
     		for (float component : buf) {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-    			int argb = samples[i];
-    			samples[i++] = color(Math.round(hue(argb)), Math.round(saturation(argb)), comp, 255);
+    			int hsb = ColorSpace.hsb(samples[i]);
+    			samples[i++] = ColorSpace.color(hsb >> 16, (hsb >> 8) & 0xFF, comp);
     		}
     		break;
     	}
     	case H: {
-    		colorMode(HSB, 255);
     		for (float component : buf) {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-    			int argb = samples[i];
-    			samples[i++] = color(comp, Math.round(saturation(argb)), Math.round(brightness(argb)), 255);
+    			int hsb = ColorSpace.hsb(samples[i]);
+    			samples[i++] = ColorSpace.color(comp, (hsb >> 8) & 0xFF, hsb & 0xFF);
     		}
     		break;
     	}
     	case S: {
-    		colorMode(HSB, 255);
     		for (float component : buf) {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
-    			int argb = samples[i];
-    			samples[i++] = color(Math.round(hue(argb)), comp, Math.round(brightness(argb)), 255);
+    			int hsb = ColorSpace.hsb(samples[i]);
+    			samples[i++] = ColorSpace.color(hsb >> 16, comp, hsb & 0xFF);
     		}
     		break;
     	}
     	case R: {
-    		colorMode(RGB, 255);
     		for (float component : buf)  {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
@@ -5159,7 +5543,6 @@ public class GlitchSort extends PApplet {
     		break;
     	}
     	case G: {
-    		colorMode(RGB, 255);
     		for (float component : buf) {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
@@ -5169,7 +5552,6 @@ public class GlitchSort extends PApplet {
     		break;
     	}
     	case B: {
-    		colorMode(RGB, 255);
     		for (float component : buf) {
     			int comp = Math.round((int) component); 
     			comp = comp > 255 ? 255 : comp < 0 ? 0 : comp;
@@ -5181,38 +5563,128 @@ public class GlitchSort extends PApplet {
     	}
     }
 	
+	/**
+	 * Performs an FFT on a supplied array of samples with statFFT, see fftEqGlitch(samples, chan, fft).
+	 * @param samples   an array of RGB values
+	 * @param chan      the channel to pass through the FFT
+	 * @return          the modified samples
+	 */
+	public int[] fftEqGlitch(int[] samples, ChannelNames chan) {
+		return fftEqGlitch(samples, chan, statFFT);
+	}
+	
 	/**
 	 * Performs an FFT on a supplied array of samples, scales frequencies using settings in the 
 	 * equalizer interface, modifies the samples and also returns the modified samples. 
 	 * 
 	 * @param samples   an array of RGB values
 	 * @param chan      the channel to pass through the FFT
+	 * @param fft       the FFT that handles the transform, each thread needs its own
 	 * @return          the modified samples
 	 */
-	public int[] fftEqGlitch(int[] samples, ChannelNames chan) {
+	public int[] fftEqGlitch(int[] samples, ChannelNames chan, Spectrum fft) {
 		// convert the selected channel to an array of floats
 		float[] buf = pullChannel(samples, chan);
 		// do a forward transform on the array of floats, 
-		// statFFT (confusing name TODO change name or varaible use) handles transform
-		statFFT.forward(buf);
-		// scale the frequencies in the fft by user-selected values from the equalizer interface
-		for (int i = 0; i < calculatedBands; i++) {
-			// get indices of the range of bands covered by each slider
-			int pos = eq.length - i - 1;
-			IntRange ir = bandList.get(pos);
-			// get the scaling value set by the user
-			float scale = eq[pos];
-			// scale all bands between lower and upper index
-			for (int j = ir.lower; j <= ir.upper; j++) {
-				statFFT.scaleBand(j, scale);
-				// if (scale != 1) println("----- fftEqGlitch: bin = "+ j +", scale = "+ scale);
-			}
-		}
+		fft.forward(buf);
+		// scale the frequencies in the fft by user-selected values from the equalizer interface, in one pass
+		float[] gains = eqGains;
+		if (null == gains || gains.length != fft.specSize()) gains = calculateEqGains();
+		fft.scaleBands(gains);
 		// inverse the transform
-		statFFT.inverse(buf);
+		fft.inverse(buf);
 		pushChannel(samples, buf, chan);
 		return samples;
 	}
+	
+	/**
+	 * Performs the same glitch as calling fftEqGlitch() on each of the R, G and B channels that has an 
+	 * array, but reads the channels in one pass, transforms two of them at a time with one complex FFT, 
+	 * and writes them back in one pass. 
+	 * 
+	 * @param samples   an array of RGB values
+	 * @param red       an array of samples.length floats to hold the red channel, or null to skip it
+	 * @param green     an array of samples.length floats to hold the green channel, or null to skip it
+	 * @param blue      an array of samples.length floats to hold the blue channel, or null to skip it
+	 * @param fft       an FFT of samples.length samples, each thread needs its own
+	 * @param fft2      another FFT of the same size, for the second channel of a pair
+	 * @return          the modified samples
+	 */
+	public int[] fftEqGlitchRGB(int[] samples, float[] red, float[] green, float[] blue, RealFFT fft, RealFFT fft2) {
+		pullRGB(samples, red, green, blue);
+		float[] gains = eqGains;
+		if (null == gains || gains.length != fft.specSize()) gains = calculateEqGains();
+		// the selected channels
+		float[][] bufs = new float[3][];
+		int n = 0;
+		if (null != red) bufs[n++] = red;
+		if (null != green) bufs[n++] = green;
+		if (null != blue) bufs[n++] = blue;
+		int i = 0;
+		if (n > 1) {
+			// transform the first two channels together
+			fft.forwardPair(bufs[0], bufs[1], fft2);
+			fft.scaleBands(gains);
+			fft2.scaleBands(gains);
+			fft.inversePair(bufs[0], bufs[1], fft2);
+			i = 2;
+		}
+		if (i < n) {
+			fft.forward(bufs[i]);
+			fft.scaleBands(gains);
+			fft.inverse(bufs[i]);
+		}
+		pushRGB(samples, red, green, blue);
+		return samples;
+	}
+	
+	/**
+	 * Extracts the red, green and blue channels from an array of rgb values in one pass.
+	 * 
+	 * @param samples   rgb values in an array of int
+	 * @param red       an array of samples.length floats for the red values, or null to skip red
+	 * @param green     an array of samples.length floats for the green values, or null to skip green
+	 * @param blue      an array of samples.length floats for the blue values, or null to skip blue
+	 */
+	public void pullRGB(int[] samples, float[] red, float[] green, float[] blue) {
+		for (int i = 0; i < samples.length; i++) {
+			int argb = samples[i];
+			if (null != red) red[i] = (argb >> 16) & 0xFF;
+			if (null != green) green[i] = (argb >> 8) & 0xFF;
+			if (null != blue) blue[i] = argb & 0xFF;
+		}
+	}
+	
+	/**
+	 * Replaces the red, green and blue channels in an array of pixel values in one pass, with values 
+	 * derived from arrays of floats and clipped to the range 0..255, as pushChannel() does. 
+	 * 
+	 * @param samples   an array of pixel values
+	 * @param red       new red values, or null to keep red
+	 * @param green     new green values, or null to keep green
+	 * @param blue      new blue values, or null to keep blue
+	 */
+	public void pushRGB(int[] samples, float[] red, float[] green, float[] blue) {
+		for (int i = 0; i < samples.length; i++) {
+			int argb = samples[i];
+			int r = (argb >> 16) & 0xFF;
+			int g = (argb >> 8) & 0xFF;
+			int b = argb & 0xFF;
+			if (null != red) {
+				r = (int) red[i];
+				r = r > 255 ? 255 : r < 0 ? 0 : r;
+			}
+			if (null != green) {
+				g = (int) green[i];
+				g = g > 255 ? 255 : g < 0 ? 0 : g;
+			}
+			if (null != blue) {
+				b = (int) blue[i];
+				b = b > 255 ? 255 : b < 0 ? 0 : b;
+			}
+			samples[i] = 255 << 24 | r << 16 | g << 8 | b;
+		}
+	}
 		
 	/**
      * Performs a zigzag or Hilbert scan, centered in the image, and passes blocks 
@@ -5222,44 +5694,54 @@ public class GlitchSort extends PApplet {
 	public void eqFFT() {
 		int order = (int) Math.sqrt(statBufferSize);
 		this.statFFTBlockWidth = order;
-		PixelScannerINF zz;
-		if (isHilbertScan) {
-			int depth = (int) (Math.log(order)/Math.log(2));
-			zz = new HilbertScanner(depth);
-			println("Hilbert depth = "+ depth);
-		}
-		else {
-			zz = new Zigzagger(order);
-			println("Zigzag order = "+ order);
-		}
-		int dw = (img.width / order);
+		PixelScannerINF zz = createScanner(order, true);
+		println(zz.getClass().getSimpleName() +" order = "+ zz.getBlockWidth());
+		final int blockWidth = order;
+		final int dw = (img.width / order);
 		int dh = (img.height / order);
 		int w = dw * order;
 		int h = dh * order;
-		int ow = (img.width - w) / 2;
-		int oh = (img.height - h) / 2;
+		final int ow = (img.width - w) / 2;
+		final int oh = (img.height - h) / 2;
+		// check the cache before backup() counts this command as an edit
+		SpectralCache cache = isSpectralCache ? getSpectralCache(zz, dw * dh) : null;
 		backup();
 		img.loadPixels();
-		for (int y = 0; y < dh; y++) {
-			for (int x = 0; x < dw; x++) {
-				int mx = x * order + ow;
-				int my = y * order + oh;
-//				     			if (random(1) > 0.5f) {
-//				    				zz.flipX();
-//				    			}
-//				     			if (random(1) > 0.5f) {
-//				    				zz.flipY();
-//				    			}
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-				// the samples are returned by fftEqGlitch, but they are modified already
-				if (isEqGlitchBrightness) fftEqGlitch(pix, ChannelNames.L);
-				if (isEqGlitchHue) fftEqGlitch(pix, ChannelNames.H);
-				if (isEqGlitchSaturation) fftEqGlitch(pix, ChannelNames.S);
-				if (isEqGlitchRed) fftEqGlitch(pix, ChannelNames.R);
-				if (isEqGlitchGreen) fftEqGlitch(pix, ChannelNames.G);
-				if (isEqGlitchBlue) fftEqGlitch(pix, ChannelNames.B);
-				zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-			}
+		if (null != cache) {
+			spectralCacheFFT(cache, zz, false, null);
+			// our own edit doesn't invalidate the cache
+			cache.version = imageVersion;
+		}
+		else {
+			final PixelScannerINF scanner = zz;
+			// each thread gets its own scanner, FFT and buffer
+			tiles.run(dw * dh, isParallelSort, new TileExecutor.TileWorkerFactory() {
+				public TileExecutor.TileWorker newWorker() {
+					return new TileExecutor.TileWorker() {
+						PixelScannerINF zz = newScanner(scanner);
+						RealFFT fft = new RealFFT(statBufferSize, sampleRate);
+						RealFFT fft2 = new RealFFT(statBufferSize, sampleRate);
+						int[] pix = new int[zz.getSize()];
+						float[][] rgb = new float[3][zz.getSize()];
+
+						public void process(int tile) {
+							int mx = (tile % dw) * blockWidth + ow;
+							int my = (tile / dw) * blockWidth + oh;
+							zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
+							// the samples are returned by fftEqGlitch, but they are modified already
+							if (isEqGlitchBrightness) fftEqGlitch(pix, ChannelNames.L, fft);
+							if (isEqGlitchHue) fftEqGlitch(pix, ChannelNames.H, fft);
+							if (isEqGlitchSaturation) fftEqGlitch(pix, ChannelNames.S, fft);
+							// RGB channels don't affect each other, so they can go through together
+							if (isEqGlitchRed || isEqGlitchGreen || isEqGlitchBlue) {
+								fftEqGlitchRGB(pix, isEqGlitchRed ? rgb[0] : null, isEqGlitchGreen ? rgb[1] : null, 
+										isEqGlitchBlue ? rgb[2] : null, fft, fft2);
+							}
+							zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+						}
+					};
+				}
+			});
 		}
 		img.updatePixels();
 		// necessary to call fitPixels to show updated image
@@ -5267,29 +5749,56 @@ public class GlitchSort extends PApplet {
 		//		analyzeEq(false);
 	}
     
+	/**
+	 * Performs an FFT on a supplied array of samples with statFFT, see fftStatGlitch(samples, chan, fft).
+	 * @param samples   an array of RGB values
+	 * @param chan      the channel to pass through the FFT
+	 * @return          statistics for the frequencies before scaling, see fftStatistics()
+	 */
+	public float[] fftStatGlitch(int[] samples, ChannelNames chan) {
+		return fftStatGlitch(samples, chan, statFFT);
+	}
+
 	/**
 	 * Performs an FFT on a supplied array of samples, scales frequencies using settings in the 
 	 * statistical interface, modifies the samples and also returns the modified samples. 
 	 * 
 	 * @param samples   an array of RGB values
 	 * @param chan      the channel to pass through the FFT
+	 * @param fft       the FFT that handles the transform, each thread needs its own
 	 * @return          the modified samples
 	 */
-	public float[] fftStatGlitch(int[] samples, ChannelNames chan) {
+	public float[] fftStatGlitch(int[] samples, ChannelNames chan, Spectrum fft) {
 		// convert the selected channel to an array of floats
 		float[] buf = pullChannel(samples, chan);
 		// do a forward transform on the array of floats
-		statFFT.forward(buf);
+		fft.forward(buf);
 		// ignore first bin, the "DC component" if low frequency is cut
 		// function removed, didn't seem particularly useful
-		float[] stats = fftStatistics(0, buf.length, false, "fft "+ chan.name());
+		float[] stats = fftStatistics(fft, 0, buf.length, false, "fft "+ chan.name());
+		scaleStatBands(fft, stats, samples.length / 2);
+		// inverse the transform
+		fft.inverse(buf);
+		pushChannel(samples, buf, chan);
+		return stats;
+	}
+	
+	/**
+	 * Scales the bands of a spectrum using settings in the statistical interface: bands whose amplitudes 
+	 * lie between the edges set by leftBound and rightBound, measured in standard deviations from the mean, 
+	 * are scaled by boost, others by cut.
+	 * 
+	 * @param fft     a Spectrum, after a forward transform
+	 * @param stats   statistics of the spectrum, from fftStatistics()
+	 * @param t       bands 1..t-1 are scaled, band 0 is skipped
+	 */
+	public void scaleStatBands(Spectrum fft, float[] stats, int t) {
 		float min = stats[0];
 		float max = stats[1];
 		float mean = stats[2];
 		float median = stats[3];
 		float sd = stats[4];
 		float skew = stats[5];
-		int t = samples.length / 2;
 		// typical values: left = 0.5f, right = 2.0f
 		//		float leftEdge = mean - sd * leftBound;
 		//		float rightEdge = mean + sd * rightBound;
@@ -5299,18 +5808,14 @@ public class GlitchSort extends PApplet {
 		//		println("-- leftEdge = "+ leftEdge +", rightEdge = "+ rightEdge	);
 		// scale the frequencies in the fft, skipping band 0
 		for (int i = 1; i < t; i++) {
-			float val = statFFT.getBand(i);
+			float val = fft.getBand(i);
 			// frequencies whose amplitudes lie outside the bounds are scaled by the cut value
-			if (val < leftEdge || val > rightEdge) statFFT.scaleBand(i, cut);
+			if (val < leftEdge || val > rightEdge) fft.scaleBand(i, cut);
 			// frequencies whose amplitudes lie inside the bounds are scaled by the boost value
 			else {
-				statFFT.scaleBand(i, boost);
+				fft.scaleBand(i, boost);
 			}
 		}
-		// inverse the transform
-		statFFT.inverse(buf);
-		pushChannel(samples, buf, chan);
-		return stats;
 	}
 
 	/**
@@ -5324,52 +5829,63 @@ public class GlitchSort extends PApplet {
 		this.statFFTBlockWidth = order;
 		// eliminate fft averaging, don't need it
 		// fft.logAverages(minBandWidth, bandsPerOctave);
-		PixelScannerINF zz;
-		if (isHilbertScan) {
-			int depth = (int) (Math.log(order)/Math.log(2));
-			zz = new HilbertScanner(depth);
-			println("Hilbert depth = "+ depth);
-		}
-		else {
-			zz = new Zigzagger(order);
-			println("Zigzag order = "+ order);
-		}
-		int dw = (img.width / order);
+		PixelScannerINF zz = createScanner(order, true);
+		println(zz.getClass().getSimpleName() +" order = "+ zz.getBlockWidth());
+		final int blockWidth = order;
+		final int dw = (img.width / order);
 		int dh = (img.height / order);
 		int totalBlocks = dw * dh;
 		int w = dw * order;
 		int h = dh * order;
-		int ow = (img.width - w) / 2;
-		int oh = (img.height - h) / 2;
+		final int ow = (img.width - w) / 2;
+		final int oh = (img.height - h) / 2;
 		float min = 0, max = 0, mean = 0, median = 0, sd = 0, skew = 0;
-		float[] stats = new float[6];
+		// statistics for each block, stored by block number and summed in order once all blocks are done
+		final float[] blockStats = new float[6 * totalBlocks];
+		// check the cache before backup() counts this command as an edit
+		SpectralCache cache = isSpectralCache ? getSpectralCache(zz, totalBlocks) : null;
 		backup();
 		img.loadPixels();
-		for (int y = 0; y < dh; y++) {
-			for (int x = 0; x < dw; x++) {
-				int mx = x * order + ow;
-				int my = y * order + oh;
-//				     			if (random(1) > 0.5f) {
-//				    				zz.flipX();
-//				    			}
-//				     			if (random(1) > 0.5f) {
-//				    				zz.flipY();
-//				    			}
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-				if (isStatGlitchBrightness) stats = fftStatGlitch(pix, ChannelNames.L);
-				if (isStatGlitchHue) stats = fftStatGlitch(pix, ChannelNames.H);
-				if (isStatGlitchSaturation) stats = fftStatGlitch(pix, ChannelNames.S);
-				if (isStatGlitchRed) stats = fftStatGlitch(pix, ChannelNames.R);
-				if (isStatGlitchGreen) stats = fftStatGlitch(pix, ChannelNames.G);
-				if (isStatGlitchBlue) stats = fftStatGlitch(pix, ChannelNames.B);
-				min += stats[0];
-				max += stats[1];
-				mean += stats[2];
-				median += stats[3];
-				sd += stats[4];
-				skew += stats[5];
-				zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-			}
+		if (null != cache) {
+			spectralCacheFFT(cache, zz, true, blockStats);
+			// our own edit doesn't invalidate the cache
+			cache.version = imageVersion;
+		}
+		else {
+			final PixelScannerINF scanner = zz;
+			// each thread gets its own scanner, FFT and buffer
+			tiles.run(totalBlocks, isParallelSort, new TileExecutor.TileWorkerFactory() {
+				public TileExecutor.TileWorker newWorker() {
+					return new TileExecutor.TileWorker() {
+						PixelScannerINF zz = newScanner(scanner);
+						Spectrum fft = new RealFFT(statBufferSize, sampleRate);
+						int[] pix = new int[zz.getSize()];
+						float[] stats = new float[6];
+
+						public void process(int tile) {
+							int mx = (tile % dw) * blockWidth + ow;
+							int my = (tile / dw) * blockWidth + oh;
+							zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
+							if (isStatGlitchBrightness) stats = fftStatGlitch(pix, ChannelNames.L, fft);
+							if (isStatGlitchHue) stats = fftStatGlitch(pix, ChannelNames.H, fft);
+							if (isStatGlitchSaturation) stats = fftStatGlitch(pix, ChannelNames.S, fft);
+							if (isStatGlitchRed) stats = fftStatGlitch(pix, ChannelNames.R, fft);
+							if (isStatGlitchGreen) stats = fftStatGlitch(pix, ChannelNames.G, fft);
+							if (isStatGlitchBlue) stats = fftStatGlitch(pix, ChannelNames.B, fft);
+							System.arraycopy(stats, 0, blockStats, 6 * tile, 6);
+							zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+						}
+					};
+				}
+			});
+		}
+		for (int i = 0; i < blockStats.length; i += 6) {
+			min += blockStats[i];
+			max += blockStats[i + 1];
+			mean += blockStats[i + 2];
+			median += blockStats[i + 3];
+			sd += blockStats[i + 4];
+			skew += blockStats[i + 5];
 		}
 		min /= totalBlocks;
 		max /= totalBlocks;
@@ -5391,6 +5907,130 @@ public class GlitchSort extends PApplet {
 	}
 
     
+	/**
+	 * Turns cached spectra for equalizer and statistical FFT on or off. With the cache on, the first 
+	 * eqFFT() or statFFT() saves the spectrum of each block of the image, and later ones apply their 
+	 * settings to the saved spectra, with only an inverse transform, until some other command edits the image.
+	 * @param val   true if eqFFT() and statFFT() should use a SpectralCache
+	 */
+	public void setSpectralCache(boolean val) {
+		isSpectralCache = val;
+		if (!isSpectralCache) spectralCache = null;
+		println("Spectral cache is "+ isSpectralCache);
+	}
+	
+	/**
+	 * Returns spectralCache if it was made for img, the scan and the current FFT size and img hasn't been 
+	 * edited since it was last used, otherwise replaces it with a new, empty cache of the current pixels. 
+	 * Call before backup() and set the cache's version to imageVersion once the FFT is done. 
+	 * @param zz       scanner for blocks
+	 * @param blocks   number of blocks
+	 * @return         a valid SpectralCache
+	 */
+	public SpectralCache getSpectralCache(PixelScannerINF zz, int blocks) {
+		img.loadPixels();
+		if (null == spectralCache || !spectralCache.isValid(img, imageVersion, img.width, img.height, zz, statBufferSize)) {
+			// let the old cache go before allocating a new one
+			spectralCache = null;
+			spectralCache = new SpectralCache(img, imageVersion, img.width, img.height, img.pixels, zz, statBufferSize, blocks);
+			println("---- new spectral cache");
+		}
+		return spectralCache;
+	}
+	
+	/**
+	 * Applies equalizer or statistical FFT settings to the spectra of the blocks of the image in a SpectralCache 
+	 * and writes the inverse transforms to img. Spectra the cache doesn't have yet are calculated from its copy 
+	 * of the image pixels. Each selected channel is transformed from the cached pixels of a block, so when more 
+	 * than one of the H, S and L channels is selected the result differs slightly from eqFFT() and statFFT() 
+	 * without the cache, which transform each channel of a block as modified by the channels before it.
+	 * 
+	 * @param cache        a valid SpectralCache
+	 * @param zz           scanner for blocks
+	 * @param isStat       true for statistical FFT, false for equalizer FFT
+	 * @param blockStats   for statistical FFT, 6 floats for each block to store the statistics of its 
+	 *                     last channel in, as statFFT() does, otherwise null
+	 */
+	public void spectralCacheFFT(final SpectralCache cache, PixelScannerINF zz, final boolean isStat, final float[] blockStats) {
+		final int blockWidth = zz.getBlockWidth();
+		final int dw = (img.width / blockWidth);
+		int dh = (img.height / blockWidth);
+		final int ow = (img.width - dw * blockWidth) / 2;
+		final int oh = (img.height - dh * blockWidth) / 2;
+		// the selected channels, in the order that eqFFT() and statFFT() transform them
+		ArrayList<ChannelNames> list = new ArrayList<ChannelNames>();
+		if (isStat ? isStatGlitchBrightness : isEqGlitchBrightness) list.add(ChannelNames.L);
+		if (isStat ? isStatGlitchHue : isEqGlitchHue) list.add(ChannelNames.H);
+		if (isStat ? isStatGlitchSaturation : isEqGlitchSaturation) list.add(ChannelNames.S);
+		if (isStat ? isStatGlitchRed : isEqGlitchRed) list.add(ChannelNames.R);
+		if (isStat ? isStatGlitchGreen : isEqGlitchGreen) list.add(ChannelNames.G);
+		if (isStat ? isStatGlitchBlue : isEqGlitchBlue) list.add(ChannelNames.B);
+		final ChannelNames[] chans = list.toArray(new ChannelNames[list.size()]);
+		// spectra and statistics the cache doesn't have yet
+		final boolean[] isNewSpectra = new boolean[chans.length];
+		final boolean[] isNewStats = new boolean[chans.length];
+		for (int c = 0; c < chans.length; c++) {
+			isNewSpectra[c] = !cache.hasSpectra(chans[c]);
+			isNewStats[c] = isStat && !cache.hasStats(chans[c]);
+			cache.allocate(chans[c], isStat);
+		}
+		float[] gains = eqGains;
+		if (!isStat && (null == gains || gains.length != cache.specSize)) gains = calculateEqGains();
+		final float[] bandGains = gains;
+		final PixelScannerINF scanner = zz;
+		// each thread gets its own scanner, FFT and buffers
+		tiles.run(dw * dh, isParallelSort, new TileExecutor.TileWorkerFactory() {
+			public TileExecutor.TileWorker newWorker() {
+				return new TileExecutor.TileWorker() {
+					PixelScannerINF zz = newScanner(scanner);
+					Spectrum fft = new RealFFT(cache.timeSize, sampleRate);
+					int[] src = new int[zz.getSize()];
+					int[] pix = new int[zz.getSize()];
+					float[] buf = new float[zz.getSize()];
+					float[] stats = new float[6];
+
+					public void process(int tile) {
+						int mx = (tile % dw) * blockWidth + ow;
+						int my = (tile / dw) * blockWidth + oh;
+						zz.pluck(cache.pixels, cache.width, cache.height, mx, my, src);
+						System.arraycopy(src, 0, pix, 0, src.length);
+						for (int c = 0; c < chans.length; c++) {
+							ChannelNames chan = chans[c];
+							if (isNewSpectra[c]) {
+								fft.forward(pullChannel(src, chan));
+								cache.putSpectrum(chan, tile, fft);
+							}
+							else {
+								cache.getSpectrum(chan, tile, fft);
+							}
+							if (isStat) {
+								if (isNewStats[c]) {
+									stats = fftStatistics(fft, 0, fft.timeSize(), false, "fft "+ chan.name());
+									cache.putStats(chan, tile, stats);
+								}
+								else {
+									cache.getStats(chan, tile, stats);
+								}
+								scaleStatBands(fft, stats, pix.length / 2);
+							}
+							else {
+								fft.scaleBands(bandGains);
+							}
+							fft.inverse(buf);
+							pushChannel(pix, buf, chan);
+						}
+						if (isStat) System.arraycopy(stats, 0, blockStats, 6 * tile, 6);
+						zz.plant(img.pixels, pix, img.width, img.height, mx, my);
+					}
+				};
+			}
+		});
+		for (int c = 0; c < chans.length; c++) {
+			cache.setFilled(chans[c], isStat);
+		}
+		println("---- spectral cache: "+ (cache.getBytes() / (1024 * 1024)) +" MB");
+	}
+
 	/**
 	 * Resets equalizer FFT controls
 	 */
@@ -5400,6 +6040,7 @@ public class GlitchSort extends PApplet {
 			Slider slider = (Slider) cpm.getControl().getController(token);
 			slider.setValue(0);
 		}
+		calculateEqGains();
 		analyzeEq(false);
 	}
 
@@ -5463,16 +6104,8 @@ public class GlitchSort extends PApplet {
 		//    		println("block size must be 8, 16, 32, 64, 128, 256 or 512 for FFT glitching");
 		//    		return;
 		//    	}
-		PixelScannerINF zz;
-		if (isHilbertScan) {
-			int depth = (int) (Math.log(order)/Math.log(2));
-			zz = new HilbertScanner(depth);
-			println("Hilbert depth = "+ depth);
-		}
-		else {
-			zz = new Zigzagger(order);
-			println("Zigzag order = "+ order);
-		}
+		PixelScannerINF zz = createScanner(order, true);
+		println(zz.getClass().getSimpleName() +" order = "+ zz.getBlockWidth());
 		// calculate how many complete blocks will fit horizontally and vertically
 		int dw = (img.width / order);
 		int dh = (img.height / order);
@@ -5491,17 +6124,17 @@ public class GlitchSort extends PApplet {
 		// maximum brightness value in image
 		float max = 0;
 		java.util.Arrays.fill(binTotals, 0);
+		int[] pix = new int[zz.getSize()];
+		float[] buf = new float[pix.length];
 		for (int y = 0; y < dh; y++) {
 			for (int x = 0; x < dw; x++) {
 				int mx = x * order + ow;
 				int my = y * order + oh;
-				int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-				float[] buf = new float[pix.length];
-				colorMode(HSB, 255);
+				zz.pluck(img.pixels, img.width, img.height, mx, my, pix);
 				// load buf with brightness values from block at mx, my
 				for (int i = 0; i < pix.length; i++) {
 					int c = pix[i];
-					buf[i] = brightness(c);
+					buf[i] = ColorSpace.brightness(c);
 					if (verbose) println(pix[i]);
 				}
 				statFFT.forward(buf);
@@ -5597,6 +6230,31 @@ public class GlitchSort extends PApplet {
 		// (minBandWidth, bandsPerOctave);
 		return bandList;
 	}
+	
+	/**
+	 * Calculates eqGains, the scaling factor for each bin of statFFT, from the equalizer values in eq 
+	 * and the bins of each band in bandList, so that fftEqGlitch() can scale a spectrum in one pass 
+	 * instead of looking up bands for every block. A bin on the boundary of two bands is scaled 
+	 * by both, and negative values are ignored, just as scaling each band with scaleBand() would do. 
+	 * Called whenever the equalizer or the FFT block size changes.
+	 * 
+	 * @return   the new eqGains
+	 */
+	public float[] calculateEqGains() {
+		float[] gains = new float[statFFT.specSize()];
+		java.util.Arrays.fill(gains, 1);
+		for (int i = 0; i < calculatedBands; i++) {
+			int pos = eq.length - i - 1;
+			IntRange ir = bandList.get(pos);
+			float scale = eq[pos];
+			if (scale < 0) continue;
+			for (int j = ir.lower; j <= ir.upper; j++) {
+				gains[j] *= scale;
+			}
+		}
+		eqGains = gains;
+		return gains;
+	}
     
     
     /**
@@ -5814,7 +6472,7 @@ public class GlitchSort extends PApplet {
     public class GlitchSignal implements AudioSignal {
     	// either 32 or 64 work well for close to real time synthesis
     	int blockEdgeSize = 64;
-    	PixelScannerINF zz;	// a pixel scanner, Zigzagger or HilbertScanner
+    	PixelScannerINF zz;	// a pixel scanner from createScanner()
     	int dw;			// number of horizontal tiles
     	int dh;			// number of vertical tiles
     	int w;			// total pixel width of complete horizontal tiles
@@ -5838,6 +6496,7 @@ public class GlitchSort extends PApplet {
     	boolean isShowBlock = false;
     	int scannerIndex = 0;
     	int trackerIndex = 0;
+    	int[] refreshPix;		// reusable buffer for blocks read by refreshBuffer()
 
     	public GlitchSignal() {
     		//        		zz = new Zigzagger(blockEdgeSize);
@@ -5867,30 +6526,15 @@ public class GlitchSort extends PApplet {
     	}
 
     	private void setupBuffer() {
-    		if (isHilbertScan) {
-    			int depth = (int) (Math.log(blockEdgeSize)/Math.log(2));
-    			zz = new HilbertScanner(depth);
-    			println("audio Hilbert depth = "+ depth);
-    		}
-    		else {
-    			zz = new Zigzagger(blockEdgeSize);
-    			println("audio Zigzag order = "+ blockEdgeSize);
-    		}
+    		zz = createScanner(blockEdgeSize, true);
+    		println("audio "+ zz.getClass().getSimpleName() +" order = "+ blockEdgeSize);
     	}
     	
     	public PixelScannerINF getZz() {
     		if (null == zz) {
       		//        		zz = new Zigzagger(blockEdgeSize);
       		/* */
-      		if (isHilbertScan) {
-      			int depth = (int) (Math.log(blockEdgeSize)/Math.log(2));
-      			zz = new HilbertScanner(depth);
-      			//println("audio Hilbert depth = "+ depth);
-      		}
-      		else {
-      			zz = new Zigzagger(blockEdgeSize);
-      			//println("audio Zigzag order = "+ blockEdgeSize);
-      		}
+      		zz = createScanner(blockEdgeSize, true);
       		/* */
     		}
     		return zz;
@@ -6017,7 +6661,9 @@ public class GlitchSort extends PApplet {
     	public void refreshBuffer(int mx, int my, float fac, float[] samp) {
     		this.mapX = mx;
     		this.mapY = my;
-    		int[] pix = getZz().pluck(img.pixels, img.width, img.height, mapX, mapY);
+    		PixelScannerINF scanner = getZz();
+    		if (null == refreshPix || refreshPix.length != scanner.getSize()) refreshPix = new int[scanner.getSize()];
+    		int[] pix = scanner.pluck(img.pixels, img.width, img.height, mapX, mapY, refreshPix);
     		buf = pullChannel(pix, ChannelNames.L);
     		if (isUseHamming) {
     			for (int i = 0; i < buf.length; i++) {
@@ -6092,17 +6738,10 @@ public class GlitchSort extends PApplet {
     		if (mapX > w - blockEdgeSize + ow || mapY > h - blockEdgeSize + oh) return;
     		//        		zz = new Zigzagger(blockEdgeSize);
     		/* */
-    		if (isHilbertScan) {
-    			int depth = (int) (Math.log(blockEdgeSize)/Math.log(2));
-    			zz = new HilbertScanner(depth);
-    			// println("audio Hilbert depth = "+ depth);
-    		}
-    		else {
-    			zz = new Zigzagger(blockEdgeSize);
-    			// println("audio Zigzag order = "+ blockEdgeSize);
-    		}
+    		zz = createScanner(blockEdgeSize, true);
     		/* */
     		img.loadPixels();
+    		imageVersion++;
     		int[] pix = zz.pluck(img.pixels, img.width, img.height, mapX, mapY);
     		// do something to a single block
     		if ('G' == c) { sortTool.setControlState(); sortTool.sort(pix); cmd = c;}
@@ -6224,103 +6863,26 @@ public class GlitchSort extends PApplet {
 	public void zigzag(int order) {
 		// TODO better fix: ControlP5 button press calls here with 0 for order, apparently...
 		if (0 == order) order = zigzagBlockWidth;
-		Zigzagger zz = new Zigzagger(order);
+		newCommandRandom("zigzag");
+		zigzagBlocks(order);
+	}
+	
+	/**
+	 * Performs a zigzag sort, centered in the image, with random numbers from rand, 
+	 * which the caller has started with newCommandRandom().
+	 * @param order   the width/height of each pixel block to sort
+	 */
+	void zigzagBlocks(int order) {
 		println("Zigzag order = "+ order);
-		int dw = (img.width / order);
-		int dh = (img.height / order);
-		int w = dw * order;
-		int h = dh * order;
-		int ow = (img.width - w) / 2;
-		int oh = (img.height - h) / 2;
 		backup();
 		img.loadPixels();
 		this.sortTool.setControlState();
+		beginSortMetrics("zigzag", 0);
 		println("--- "+ zigzagStyle.name() +" zigzag ----");
-		if (ZigzagStyle.PERMUTE != zigzagStyle) {
-			zzLen = dh * dw;
-			zzCorners = new ZigzagCorner[zzLen];
-			Arrays.fill(zzCorners, ZigzagCorner.TOPLEFT);
-			for (int y = 0; y < dh; y++) {
-				for (int x = 0; x < dw; x++) {
-					// a quick way to sort only a determined percentage of cells
-					if (random(100) > (int)(zigzagPercent)) continue;
-					int mx = x * order + ow;
-					int my = y * order + oh;
-					int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-					this.sortTool.sort(pix);
-					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-					int zzWhichCorner = 0;
-					if (ZigzagStyle.RANDOM == zigzagStyle) {
-						if (random(1) > 0.5f) {
-							zz.flipX();
-							zzWhichCorner += 1;
-						}
-						if (random(1) > 0.5f) {
-							zz.flipY();
-							zzWhichCorner += 2;
-						}
-						zzCorners[y * dw + x] = (ZigzagCorner.values()[zzWhichCorner]);
-					}
-				}
-			}
-		}
-		else {
-			// permute zigzag orientation in 2x2 blocks
-			int[] perm = {0, 1, 2, 3};
-			ZigzagCorner[] zzOrder 
-			= {ZigzagCorner.TOPLEFT, ZigzagCorner.BOTTOMLEFT, ZigzagCorner.BOTTOMRIGHT, ZigzagCorner.TOPRIGHT};
-			Zigzagger[] zzList = new Zigzagger[4];
-			zzList[0] = zz;              // TOPLEFT
-			zz = new Zigzagger(order);
-			zz.flipX();
-			zzList[1] = zz;              // BOTTOMLEFT
-			zz = new Zigzagger(order);
-			zz.flipX();
-			zz.flipY();
-			zzList[2] = zz;              // BOTTOMRIGHT
-			zz = new Zigzagger(order);
-			zz.flipY();
-			zzList[3] = zz;              // TOPRIGHT
-			int dw2 = dw/2;
-			int dh2 = dh/2;
-			zzLen = dh2 * 2 * dw2 * 2;
-			zzCorners = new ZigzagCorner[zzLen];
-			this.sortTool.setControlState();
-			for (int y = 0; y < dh2; y++) {
-				for (int x = 0; x < dw2; x++) {
-					// a quick way to sort only a determined percentage of cells
-					if (random(100) > (int)(zigzagPercent)) continue;
-					int mx = 2 * x * order + ow;
-					int my = 2 * y * order + oh;
-					shuffle(perm);
-					int elem = perm[0];
-					zz = zzList[elem];
-					// zzCorners[y * dw2 + x] = zzOrder[elem];
-					int[] pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-					this.sortTool.sort(pix);
-					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-					elem = perm[1];
-					zz = zzList[elem];
-					my += order;
-					//zzCorners[y *  dw2 + x * 2] = zzOrder[elem];
-					pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-					this.sortTool.sort(pix);
-					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-					elem = perm[2];
-					zz = zzList[elem];
-					mx += order;
-					pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-					this.sortTool.sort(pix);
-					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-					elem = perm[3];
-					zz = zzList[elem];
-					my -= order;
-					pix = zz.pluck(img.pixels, img.width, img.height, mx, my);
-					this.sortTool.sort(pix);
-					zz.plant(img.pixels, pix, img.width, img.height, mx, my);
-				}
-			}
-		}
+		zzCorners = sortScanBlocks(order, false);
+		zzLen = zzCorners.length;
+		sortTool.setRandom(rand);
+		if (null != metrics) metrics.endRun();
 		img.updatePixels();
 		// necessary to call fitPixels to show updated image
 		fitPixels(isFitToScreen, false);
@@ -6331,10 +6893,12 @@ public class GlitchSort extends PApplet {
       * pixel blocks for zigzag sorting to a random number between zigzagFloor and zigzagCeiling + 1.
      */
     public void zigzag() {
-    	int order = (int) random(zigzagFloor, zigzagCeiling + 1);
+    	// draw the block width from this command's stream, so a fixed seed reproduces it
+    	newCommandRandom("zigzag");
+    	int order = (int) rand.random(zigzagFloor, zigzagCeiling + 1);
     	zigzagBlockWidth = order;
     	println("zigzagFloor = "+ zigzagFloor +", zigzagCeiling = "+ zigzagCeiling +", order = "+ order);
-    	zigzag(order);
+    	zigzagBlocks(order);
     }
     
     /********************************************/
@@ -6352,106 +6916,28 @@ public class GlitchSort extends PApplet {
   	 * @param depth   the width/height of each pixel block to sort
   	 */
   	public void hilbertScan(int depth) {
+  		newCommandRandom("hilbertScan");
+  		hilbertScanBlocks(depth);
+  	}
+  	
+  	/**
+  	 * Performs a sort along a Hilbert curve, centered in the image, with random numbers from rand, 
+  	 * which the caller has started with newCommandRandom().
+  	 * @param depth   the width/height of each pixel block to sort, as a power of 2, or 0 to use zigzagBlockWidth
+  	 */
+  	void hilbertScanBlocks(int depth) {
   		// TODO better fix: ControlP5 button press calls here with 0 for order, apparently...
   		if (0 == depth) depth = (int) (Math.log(zigzagBlockWidth)/Math.log(2));
   		println("-------- hilbertScan depth = "+ depth);
-  		HilbertScanner hilb = new HilbertScanner(depth);
-  		println("hilbertScan depth = "+ depth);
-  		int blockWidth = hilb.getBlockWidth();
-  		int dw = (img.width / blockWidth);
-  		int dh = (img.height / blockWidth);
-  		int w = dw * blockWidth;
-  		int h = dh * blockWidth;
-  		int ow = (img.width - w) / 2;
-  		int oh = (img.height - h) / 2;
   		backup();
   		img.loadPixels();
   		this.sortTool.setControlState();
+  		beginSortMetrics("hilbertScan", 0);
   		println("--- "+ zigzagStyle.name() +" zigzag ----");
-  		if (ZigzagStyle.PERMUTE != zigzagStyle) {
-  			hilbLen = dh * dw;
-  			hilbCorners = new ZigzagCorner[hilbLen];
-  			Arrays.fill(hilbCorners, ZigzagCorner.TOPLEFT);
-  			for (int y = 0; y < dh; y++) {
-  				for (int x = 0; x < dw; x++) {
-  					// a quick way to sort only a determined percentage of cells
-  					if (random(100) > (int)(zigzagPercent)) continue;
-  					int mx = x * blockWidth + ow;
-  					int my = y * blockWidth + oh;
-  					int[] pix = hilb.pluck(img.pixels, img.width, img.height, mx, my);
-  					this.sortTool.sort(pix);
-  					hilb.plant(img.pixels, pix, img.width, img.height, mx, my);
-  					int hilbWhichCorner = 0;
-  					if (ZigzagStyle.RANDOM == zigzagStyle) {
-  						if (random(1) > 0.5f) {
-  							hilb.flipX();
-  							hilbWhichCorner += 1;
-  						}
-  						if (random(1) > 0.5f) {
-  							hilb.flipY();
-  							hilbWhichCorner += 2;
-  						}
-  						hilbCorners[y * dw + x] = (ZigzagCorner.values()[hilbWhichCorner]);
-  					}
-  				}
-  			}
-  		}
-  		else {
-  			// permute zigzag orientation in 2x2 blocks
-  			int[] perm = {0, 1, 2, 3};
-  			ZigzagCorner[] hilbOrder = {ZigzagCorner.TOPLEFT, ZigzagCorner.BOTTOMLEFT, ZigzagCorner.BOTTOMRIGHT, ZigzagCorner.TOPRIGHT};
-  			HilbertScanner[] hilbList = new HilbertScanner[4];
-  			hilbList[0] = hilb;              // TOPLEFT
-  			hilb = new HilbertScanner(depth);
-  			hilb.flipX();
-  			hilbList[1] = hilb;              // BOTTOMLEFT
-  			hilb = new HilbertScanner(depth);
-  			hilb.flipX();
-  			hilb.flipY();
-  			hilbList[2] = hilb;              // BOTTOMRIGHT
-  			hilb = new HilbertScanner(depth);
-  			hilb.flipY();
-  			hilbList[3] = hilb;              // TOPRIGHT
-  			int dw2 = dw/2;
-  			int dh2 = dh/2;
-  			hilbLen = dh2 * 2 * dw2 * 2;
-  			hilbCorners = new ZigzagCorner[hilbLen];
-  			this.sortTool.setControlState();
-  			for (int y = 0; y < dh2; y++) {
-  				for (int x = 0; x < dw2; x++) {
-  					// a quick way to sort only a determined percentage of cells
-  					if (random(100) > (int)(zigzagPercent)) continue;
-  					int mx = 2 * x * blockWidth + ow;
-  					int my = 2 * y * blockWidth + oh;
-  					shuffle(perm);
-  					int elem = perm[0];
-  					hilb = hilbList[elem];
-  					// hilbCorners[y * dw2 + x] = hilbOrder[elem];
-  					int[] pix = hilb.pluck(img.pixels, img.width, img.height, mx, my);
-  					this.sortTool.sort(pix);
-  					hilb.plant(img.pixels, pix, img.width, img.height, mx, my);
-  					elem = perm[1];
-  					hilb = hilbList[elem];
-  					my += blockWidth;
-  					//hilbCorners[y *  dw2 + x * 2] = hilbOrder[elem];
-  					pix = hilb.pluck(img.pixels, img.width, img.height, mx, my);
-  					this.sortTool.sort(pix);
-  					hilb.plant(img.pixels, pix, img.width, img.height, mx, my);
-  					elem = perm[2];
-  					hilb = hilbList[elem];
-  					mx += blockWidth;
-  					pix = hilb.pluck(img.pixels, img.width, img.height, mx, my);
-  					this.sortTool.sort(pix);
-  					hilb.plant(img.pixels, pix, img.width, img.height, mx, my);
-  					elem = perm[3];
-  					hilb = hilbList[elem];
-  					my -= blockWidth;
-  					pix = hilb.pluck(img.pixels, img.width, img.height, mx, my);
-  					this.sortTool.sort(pix);
-  					hilb.plant(img.pixels, pix, img.width, img.height, mx, my);
-  				}
-  			}
-  		}
+  		hilbCorners = sortScanBlocks(1 << depth, true);
+  		hilbLen = hilbCorners.length;
+  		sortTool.setRandom(rand);
+  		if (null != metrics) metrics.endRun();
   		img.updatePixels();
   		// necessary to call fitPixels to show updated image
   		fitPixels(isFitToScreen, false);
@@ -6462,10 +6948,190 @@ public class GlitchSort extends PApplet {
      * pixel blocks for zigzag sorting to a random number between zigzagFloor and zigzagCeiling + 1.
     */
    public void hilbertScan() {
-   	int order = (int) random(zigzagFloor, zigzagCeiling + 1);
+   	// draw the block width from this command's stream, so a fixed seed reproduces it
+   	newCommandRandom("hilbertScan");
+   	int order = (int) rand.random(zigzagFloor, zigzagCeiling + 1);
    	zigzagBlockWidth = order;
    	println("Hilbert Scan: zigzagFloor = "+ zigzagFloor +", zigzagCeiling = "+ zigzagCeiling +", order = "+ order);
-   	hilbertScan(0);
+   	hilbertScanBlocks(0);
+   }
+
+  	/**
+  	 * Sorts square blocks of pixels, centered in the image, along a zigzag or Hilbert scan, in parallel 
+  	 * if isParallelSort is true. With ZigzagStyle.RANDOM each block gets a random orientation, with ALIGN
+  	 * all blocks have the same orientation, and with PERMUTE the four blocks of each 2 x 2 tile get
+  	 * a random permutation of four orientations. Each tile (a block, or 2 x 2 blocks for PERMUTE) draws its
+  	 * random numbers from rand.split(tile number), and each thread has its own scanner and sorter,
+  	 * so the image doesn't depend on how tiles are scheduled.
+  	 * @param blockWidth   number of pixels on an edge of a block, a power of 2 for Hilbert scans
+  	 * @param isHilbert    true for a Hilbert scan, false for a zigzag scan
+  	 * @return             the corner each block's scan starts from, null for blocks that PERMUTE leaves unrecorded
+  	 */
+  	ZigzagCorner[] sortScanBlocks(final int blockWidth, final boolean isHilbert) {
+  		int dw = (img.width / blockWidth);
+  		int dh = (img.height / blockWidth);
+  		final int ow = (img.width - dw * blockWidth) / 2;
+  		final int oh = (img.height - dh * blockWidth) / 2;
+  		final boolean isPermute = (ZigzagStyle.PERMUTE == zigzagStyle);
+  		final boolean isRandom = (ZigzagStyle.RANDOM == zigzagStyle);
+  		// with PERMUTE, a tile is a 2 x 2 group of blocks
+  		final int tileWidth = isPermute ? 2 * blockWidth : blockWidth;
+  		final int tw = isPermute ? dw/2 : dw;
+  		final int th = isPermute ? dh/2 : dh;
+  		final ZigzagCorner[] corners = new ZigzagCorner[isPermute ? th * 2 * tw * 2 : tw * th];
+  		if (!isPermute) Arrays.fill(corners, ZigzagCorner.TOPLEFT);
+  		final GlitchRandom commandRand = rand;
+  		final int percent = (int)(zigzagPercent);
+  		final int[] pixels = img.pixels;
+  		final int width = img.width;
+  		final int height = img.height;
+  		tiles.run(tw * th, isParallelSort, new TileExecutor.TileWorkerFactory() {
+  			public TileExecutor.TileWorker newWorker() {
+  				return new TileExecutor.TileWorker() {
+  					PixelScannerINF zz = isHilbert 
+  							? new HilbertScanner(Integer.numberOfTrailingZeros(blockWidth)) : new Zigzagger(blockWidth);
+  					SortSelector sorter = sortTool.newWorker();
+  					int[] pix = new int[zz.getSize()];
+  					int[] perm = {0, 1, 2, 3};
+  					// orientations of the scan: TOPLEFT, BOTTOMLEFT, BOTTOMRIGHT, TOPRIGHT
+  					int[] orients = {0, ScanTable.FLIP_X, ScanTable.FLIP_X | ScanTable.FLIP_Y, ScanTable.FLIP_Y};
+  					
+  					public void process(int tile) {
+  						// each tile gets its own stream of random numbers
+  						GlitchRandom blockRand = commandRand.split(tile);
+  						sorter.setRandom(blockRand);
+  						// a quick way to sort only a determined percentage of cells
+  						if (blockRand.random(100) > percent) return;
+  						int mx = (tile % tw) * tileWidth + ow;
+  						int my = (tile / tw) * tileWidth + oh;
+  						if (!isPermute) {
+  							int whichCorner = 0;
+  							if (isRandom) {
+  								// pick this block's orientation before sorting it, so it doesn't depend on other blocks
+  								if (blockRand.random(1) > 0.5f) whichCorner += 1;
+  								if (blockRand.random(1) > 0.5f) whichCorner += 2;
+  								corners[tile] = ZigzagCorner.values()[whichCorner];
+  							}
+  							zz.setOrientation(whichCorner);
+  							sortBlock(mx, my);
+  							return;
+  						}
+  						// permute scan orientation in 2x2 blocks, counterclockwise from top left,
+  						// starting from the same order in every tile so the permutation depends only on blockRand
+  						for (int i = 0; i < perm.length; i++) perm[i] = i;
+  						shuffle(perm, blockRand);
+  						zz.setOrientation(orients[perm[0]]);
+  						sortBlock(mx, my);
+  						zz.setOrientation(orients[perm[1]]);
+  						sortBlock(mx, my + blockWidth);
+  						zz.setOrientation(orients[perm[2]]);
+  						sortBlock(mx + blockWidth, my + blockWidth);
+  						zz.setOrientation(orients[perm[3]]);
+  						sortBlock(mx + blockWidth, my);
+  					}
+  					
+  					void sortBlock(int mx, int my) {
+  						zz.pluck(pixels, width, height, mx, my, pix);
+  						sorter.sort(pix);
+  						zz.plant(pixels, pix, width, height, mx, my);
+  					}
+  				};
+  			}
+  		});
+  		return corners;
+  	}
+   
+   /**
+    * Sorts the entire image along a Gilbert curve, a generalized Hilbert curve that covers any rectangle, 
+    * so unlike zigzag() and hilbertScan() no margins are left unsorted. The curve is divided into segments
+    * of zigzagBlockWidth * zigzagBlockWidth pixels, and zigzagPercent of the segments are sorted.
+    * Images larger than streamScanPixels are streamed one segment at a time, see gilbertStreamSort().
+    */
+   public void gilbertScan() {
+   	int segment = zigzagBlockWidth * zigzagBlockWidth;
+   	println("-------- gilbertScan "+ img.width +" x "+ img.height +", segment length = "+ segment);
+   	backup();
+   	img.loadPixels();
+   	newCommandRandom("gilbertScan");
+   	this.sortTool.setControlState();
+   	beginSortMetrics("gilbertScan", 0);
+   	if ((long) img.width * img.height > streamScanPixels) {
+   		gilbertStreamSort(segment);
+   	}
+   	else {
+   		GilbertScanner gilb = new GilbertScanner(img.width, img.height);
+   		int[] pix = gilb.pluck(img.pixels, img.width, img.height, 0, 0);
+   		int count = (pix.length + segment - 1) / segment;
+   		int[] bands = new int[2 * count];
+   		int b = 0;
+   		for (int i = 0; i < count; i++) {
+   			// a quick way to sort only a determined percentage of segments
+   			if (rand.random(100) > (int)(zigzagPercent)) continue;
+   			bands[b++] = i * segment;
+   			bands[b++] = Math.min(pix.length, (i + 1) * segment) - 1;
+   		}
+   		sortTool.sortBands(pix, Arrays.copyOf(bands, b), isParallelSort);
+   		gilb.plant(img.pixels, pix, img.width, img.height, 0, 0);
+   	}
+   	if (null != metrics) metrics.endRun();
+   	img.updatePixels();
+   	// necessary to call fitPixels to show updated image
+   	fitPixels(isFitToScreen, false);
+   }
+   
+   /**
+    * Sorts segments of a Gilbert curve over the entire image, generating the curve one segment at a time, 
+    * so that memory use depends on the length of a segment and not on the size of the image. 
+    * Draws the same random numbers as the table version of gilbertScan(), so the results are the same.
+    * @param segment   number of pixels in each segment
+    */
+   public void gilbertStreamSort(int segment) {
+   	println("---- streaming Gilbert scan");
+   	GilbertStream stream = new GilbertStream(img.width, img.height);
+   	int[] off = new int[segment];
+   	int[] pix = new int[segment];
+   	int band = 0;
+   	while (stream.hasNext()) {
+   		int len = stream.next(off, img.width);
+   		// a quick way to sort only a determined percentage of segments
+   		if (rand.random(100) > (int)(zigzagPercent)) continue;
+   		GilbertStream.pluck(img.pixels, off, len, pix);
+   		// each segment gets the stream of random numbers that sortBands() would give it
+   		sortTool.setRandom(rand.split(band++));
+   		sortTool.sort(pix, 0, len - 1);
+   		GilbertStream.plant(img.pixels, pix, off, len);
+   	}
+   	sortTool.setRandom(rand);
+   }
+   
+   /**
+    * Passes windows of statBufferSize pixels along a Gilbert curve over the entire image to the 
+    * equalizer FFT, streaming the curve so that memory use does not depend on the size of the image.
+    * A last window shorter than statBufferSize is left as it is.
+    */
+   public void gilbertEqFFT() {
+   	println("-------- gilbertEqFFT "+ img.width +" x "+ img.height +", window = "+ statBufferSize);
+   	backup();
+   	img.loadPixels();
+   	GilbertStream stream = new GilbertStream(img.width, img.height);
+   	int[] off = new int[statBufferSize];
+   	int[] pix = new int[statBufferSize];
+   	while (stream.hasNext()) {
+   		int len = stream.next(off, img.width);
+   		if (len < statBufferSize) break;
+   		GilbertStream.pluck(img.pixels, off, len, pix);
+   		// the samples are returned by fftEqGlitch, but they are modified already
+   		if (isEqGlitchBrightness) fftEqGlitch(pix, ChannelNames.L);
+   		if (isEqGlitchHue) fftEqGlitch(pix, ChannelNames.H);
+   		if (isEqGlitchSaturation) fftEqGlitch(pix, ChannelNames.S);
+   		if (isEqGlitchRed) fftEqGlitch(pix, ChannelNames.R);
+   		if (isEqGlitchGreen) fftEqGlitch(pix, ChannelNames.G);
+   		if (isEqGlitchBlue) fftEqGlitch(pix, ChannelNames.B);
+   		GilbertStream.plant(img.pixels, pix, off, len);
+   	}
+   	img.updatePixels();
+   	// necessary to call fitPixels to show updated image
+   	fitPixels(isFitToScreen, false);
    }
 
         
@@ -3,7 +3,6 @@
  */
 package net.paulhertz.glitchsort;
 
-import java.util.Arrays;
 import processing.core.*;
 import net.paulhertz.aifile.*;
 
@@ -13,29 +12,15 @@ import net.paulhertz.aifile.*;
  * Provides methods for reading (pluck) and writing (plant) from an array of pixels.
  *
  */
-class HilbertScanner implements PixelScannerINF {
+class HilbertScanner extends AbstractScanner {
+	  /** name of this type of scan in ScannerCache */
+	  static final String TYPE = "Hilbert";
 	  /** Hilbert x coord used internally */
 	  private int bertx;
 	  /** Hilbert y coord, used internally */
 	  private int berty;
-	  /** x coordinates */
-	  int[] xcoords;
-	  /** y coordinates */
-	  int[] ycoords;
-	  /** flipped x coordinates */
-	  int[] flipXcoords;
-	  /** flipped y coordinates */
-	  int[] flipYcoords;
-	  /** index map */
-	  private int[] indexMap;
 	  /** the depth of recursion of the Hilbert curve */
 	  int depth = 1;
-	  /** the dimension of an edge of the square block of pixels */
-	  int d;
-	  /** the total number of points in the curve */
-	  int n;
-	  /** the verbose */
-	  boolean verbose = false;
 	  /** if depth is an odd number we need to correct the distance and coordinate calculations */
 	  boolean doXYSwap = false;
 
@@ -46,11 +31,12 @@ class HilbertScanner implements PixelScannerINF {
 	    this.depth = depth;
 	    d = (int) Math.round(Math.pow(2, depth));
 	    n = d * d;
-	    xcoords = new int[n];
-	    ycoords = new int[n];
-	    indexMap = new int[n];
 	    doXYSwap = (depth % 2 == 1);
-	    generateCoords();
+	    loadTable();
+	  }
+
+	  String getType() {
+	    return TYPE;
 	  }
 	  
 	  /** needed to make corrections when width is an odd power of 2 */
@@ -104,85 +90,58 @@ class HilbertScanner implements PixelScannerINF {
 	    }
 	  }
 
-	  public void swapXY() {
-	    int temp = berty;
-	    berty = bertx;
-	    bertx = temp;
-	  }
-
 	  /**
-	   * Generates coordinates of a block of pixels of specified dimensions, offset from (0,0).
+	   * Computes the index of a point directly from its coordinates, so lookup() doesn't need an index map.
 	   */
-	  public void generateCoords() {
-	    int index = 0;
-	    for (int i = 0; i < n; i++) {
-	      d2xy(n, i);
-	      xcoords[i] = bertx;
-	      ycoords[i] = berty;
-	      index = bertx + d * berty;
-	      indexMap[index] = i;
-	    }
+	  int lookupBase(int x, int y) {
+	    return hilbertIndex(d, x, y);
 	  }
 
-
-	  public void flipX() {
-	    int m = d - 1;
-	    for (int i = 0; i < xcoords.length; i++) {
-	      xcoords[i] = m - xcoords[i];
-	    }
-	  }
-
-	  public void flipY() {
-	    int m = d - 1;
-	    for (int i = 0; i < ycoords.length; i++) {
-	      ycoords[i] = m - ycoords[i];
-	    }
-	  }
-	  
-	  
-	 public void swapCoords() {
-	   int[] temp = Arrays.copyOf(xcoords, xcoords.length);
-	   xcoords = ycoords;
-	   ycoords = temp;
-	 }
-
-
 	  /**
-	   * @param pix   an array of pixels
-	   * @param w     width of the image represented by the array of pixels
-	   * @param h     height of the image represented by the array of pixels
-	   * @param x     x-coordinate of the location in the image to scan
-	   * @param y     y-coordinate of the location in the image to scan
-	   * @return      an array in the order determined by the Hilbert scan
+	   * Closed form inverse of the Hilbert curve generated by generateCoords().
+	   * @param side   the number of pixels on an edge of the block, a power of 2
+	   * @param x      x coordinate in orientation 0
+	   * @param y      y coordinate in orientation 0
+	   * @return       index of (x, y) in the scan
 	   */
-	  public int[] pluck(int[] pix, int w, int h, int x, int y) {
-	    int len = d * d;
-	    int[] out = new int[len];
-	    for (int i = 0; i < len; i++) {
-	      int p = (y + ycoords[i]) * w + (x) + xcoords[i];
-	      if (verbose) {
-	        System.out.println("x = "+ x +", y = "+ y +", i = "+ i +", p = "+ p +", hilbert = ("+ xcoords[i] +", "+ ycoords[i] +")");
+	  static int hilbertIndex(int side, int x, int y) {
+	    int rx, ry, index = 0;
+	    for (int s = side / 2; s > 0; s /= 2) {
+	      rx = ((x & s) > 0) ? 1 : 0;
+	      ry = ((y & s) > 0) ? 1 : 0;
+	      index += s * s * ((3 * rx) ^ ry);
+	      // rotate/flip the quadrant, as rot() does
+	      if (ry == 0) {
+	        if (rx == 1) {
+	          x = side - 1 - x;
+	          y = side - 1 - y;
+	        }
+	        int t = x;
+	        x = y;
+	        y = t;
 	      }
-	      out[i] = pix[p];
 	    }
-	    return out;
+	    return index;
+	  }
+
+	  public void swapXY() {
+	    int temp = berty;
+	    berty = bertx;
+	    bertx = temp;
 	  }
 
 	  /**
-	   * @param pix      an array of pixels
-	   * @param sprout   an array of d * d pixels to write to the array of pixels
-	   * @param w        width of the image represented by the array of pixels
-	   * @param h        height of the image represented by the array of pixels
-	   * @param x        x-coordinate of the location in the image to write to
-	   * @param y        y-coordinate of the location in the image to write to
+	   * Generates coordinates of a block of pixels of specified dimensions, offset from (0,0).
+	   * Called by loadTable() when ScannerCache doesn't have them yet.
 	   */
-	  public void plant(int[] pix, int[] sprout, int w, int h, int x, int y) {
-	    for (int i = 0; i < d * d; i++) {
-	      int p = (y + ycoords[i]) * w + (x) + xcoords[i];
-	      pix[p] = sprout[i];
+	  void generateCoords() {
+	    for (int i = 0; i < n; i++) {
+	      d2xy(n, i);
+	      setCoord(i, bertx, berty);
 	    }
 	  }
 
+
 	  /* (non-Javadoc)
 	   * returns a list of coordinate points that define a scan of order d.
 	   * @see java.lang.Object#toString()
@@ -190,8 +149,8 @@ class HilbertScanner implements PixelScannerINF {
 	  public String toString() {
 	    String buf = new String();
 	    buf += ("Hilbert order: "+ this.d +"\n  ");
-	    for (int i = 0; i < xcoords.length; i++) {
-	      buf += ("("+ xcoords[i] +", "+ ycoords[i] +") ");
+	    for (int i = 0; i < n; i++) {
+	      buf += ("("+ xcoord(i) +", "+ ycoord(i) +") ");
 	    }
 	    buf += ("\n");
 	    return buf;
@@ -202,34 +161,6 @@ class HilbertScanner implements PixelScannerINF {
 	    return depth;
 	  }
 
-	  public int getBlockWidth() {
-	    return d;
-	  }
-
-	  public int getSize() {
-	    return indexMap.length;
-	  }
-
-	  public boolean isVerbose() {
-	    return verbose;
-	  }
-
-	  public void setVerbose(boolean verbose) {
-	    this.verbose = verbose;
-	  }
-
-	  public int lookup(int x, int y) {
-	    return indexMap[x + d * y];
-	  }
-
-	  public int xcoord(int pos) {
-	    return xcoords[pos];
-	  }
-
-	  public int ycoord(int pos) {
-	    return ycoords[pos];
-	  }
-
 	  /**
 	   * Rotates an array of ints left by d values. Uses efficient "Three Rotation" algorithm.
 	   * @param arr   array of ints to rotate
@@ -260,10 +191,12 @@ class HilbertScanner implements PixelScannerINF {
 	  }
 
 	  public void rotateXLeft(int offset) {
+	    detach();
 	    rotateLeft(xcoords, offset);
 	  }
 
 	  public void rotateYLeft(int offset) {
+	    detach();
 	    rotateLeft(ycoords, offset);
 	  }
 	}
@@ -0,0 +1,283 @@
+package net.paulhertz.glitchsort;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static net.paulhertz.glitchsort.GlitchConstants.*;
+
+/**
+ * Scans a block of pixels along a curve generated by a Lindenmeyer system, such as a Hilbert, Moore,
+ * Gosper or dragon curve. The productions are expanded to the requested depth, symbol by symbol
+ * with Lindenmeyer.expand(), and walked by a simple turtle:
+ * '+' turns clockwise by the angle, '-' turns counterclockwise, each of the draw characters moves forward
+ * one step and visits the pixel there, and other characters are ignored. The pixels visited, starting with
+ * the turtle's first position, are compiled into a coordinate table for the bounding box of the curve.
+ * <p>
+ * Curves that are not space-filling, like the dragon curve, or that don't lie on the pixel grid, like
+ * the Gosper curve, visit only some of the pixels in their block, and pixels visited more than once are
+ * only scanned the first time. getSize() is the number of pixels scanned, and lookup() returns -1 for
+ * pixels the curve doesn't visit. Tables are cached in ScannerCache for each production set and depth.
+ * </p>
+ */
+class LSystemScanner extends AbstractScanner {
+	/** name of this type of scan, the production set and depth are added to it for ScannerCache */
+	static final String TYPE = "LSystem";
+	/** width, height and number of points of each scan that has been compiled, by type */
+	private static final HashMap<String, int[]> extents = new HashMap<String, int[]>();
+	/** the production set */
+	Lindenmeyer lind;
+	/** the starting string */
+	String axiom;
+	/** number of times productions are applied to the axiom */
+	int depth;
+	/** angle of each turn, in degrees, must divide 360 */
+	double angle;
+	/** characters that move the turtle forward */
+	String drawChars;
+	/** length of a step, in pixels */
+	double step;
+	/** the height of the block of pixels, d is the width */
+	int height;
+	/** name of this scan in ScannerCache */
+	private String type;
+	/** compiled coordinates, packed, until they are copied into a table */
+	private int[] compiled;
+
+	/**
+	 * @param lind        a Lindenmeyer system with productions loaded with put()
+	 * @param axiom       the starting string
+	 * @param depth       number of times to apply the productions
+	 * @param angle       angle of each turn in degrees, 360 / angle must be a whole number
+	 * @param drawChars   characters that move the turtle forward a step
+	 * @param step        length of a step in pixels, 1 for curves on a square grid
+	 */
+	public LSystemScanner(Lindenmeyer lind, String axiom, int depth, double angle, String drawChars, double step) {
+		long turns = Math.round(360 / angle);
+		if (turns < 1 || Math.abs(turns * angle - 360) > 1e-9) {
+			throw new IllegalArgumentException("LSystemScanner angle must divide 360 degrees, got "+ angle);
+		}
+		this.lind = lind;
+		this.axiom = axiom;
+		this.depth = depth;
+		this.angle = angle;
+		this.drawChars = drawChars;
+		this.step = step;
+		this.type = TYPE +" "+ axiom +" "+ lind +" "+ angle +" "+ drawChars +" "+ step +" "+ depth;
+		int[] ext;
+		synchronized (extents) {
+			ext = extents.get(type);
+		}
+		if (null == ext) {
+			compile();
+			ext = new int[] {d, height, n};
+			synchronized (extents) {
+				extents.put(type, ext);
+			}
+		}
+		d = ext[0];
+		height = ext[1];
+		n = ext[2];
+		loadTable(d, height);
+		compiled = null;
+	}
+
+	/**
+	 * @param zz   an LSystemScanner
+	 * @return     a new scanner for the same curve, depth and orientation, for another thread
+	 */
+	static LSystemScanner copy(LSystemScanner zz) {
+		LSystemScanner scanner = new LSystemScanner(zz.lind, zz.axiom, zz.depth, zz.angle, zz.drawChars, zz.step);
+		scanner.setOrientation(zz.getOrientation());
+		return scanner;
+	}
+
+	/**
+	 * @param curve   one of the preset curves
+	 * @param depth   depth of recursion, clamped to 1..maxDepth(curve)
+	 * @return        a scanner for the curve
+	 */
+	static LSystemScanner create(LSystemCurve curve, int depth) {
+		depth = Math.max(1, Math.min(depth, maxDepth(curve)));
+		switch (curve) {
+		case MOORE: return moore(depth);
+		case GOSPER: return gosper(depth);
+		case DRAGON: return dragon(depth);
+		default: return hilbert(depth);
+		}
+	}
+
+	/**
+	 * @param curve   one of the preset curves
+	 * @return        the greatest depth that gives a block of no more than 512 pixels on an edge
+	 */
+	static int maxDepth(LSystemCurve curve) {
+		switch (curve) {
+		case MOORE: return 8;
+		case GOSPER: return 5;
+		case DRAGON: return 16;
+		default: return 9;
+		}
+	}
+
+	/**
+	 * @param depth   depth of recursion, the block is 2^depth pixels on an edge
+	 * @return        a scanner for the Hilbert curve, the same curve as runHilbert() draws
+	 */
+	static LSystemScanner hilbert(int depth) {
+		Lindenmeyer lind = new Lindenmeyer();
+		lind.put('L', "+RF-LFL-FR+");
+		lind.put('R', "-LF+RFR+FL-");
+		return new LSystemScanner(lind, "L", depth, 90, "F", 1);
+	}
+
+	/**
+	 * @param depth   depth of recursion, the block is 2^(depth + 1) pixels on an edge
+	 * @return        a scanner for the Moore curve, a closed loop version of the Hilbert curve
+	 */
+	static LSystemScanner moore(int depth) {
+		Lindenmeyer lind = new Lindenmeyer();
+		lind.put('L', "-RF+LFL+FR-");
+		lind.put('R', "+LF-RFR-FL+");
+		return new LSystemScanner(lind, "LFL+F+LFL", depth, 90, "F", 1);
+	}
+
+	/**
+	 * @param depth   depth of recursion
+	 * @return        a scanner for the Gosper (flowsnake) curve, which lies on a hexagonal grid
+	 *                and visits a small fraction of the pixels in its block
+	 */
+	static LSystemScanner gosper(int depth) {
+		Lindenmeyer lind = new Lindenmeyer();
+		lind.put('A', "A-B--B+A++AA+B-");
+		lind.put('B', "+A-AA--B-A+B+B");
+		return new LSystemScanner(lind, "A", depth, 60, "AB", 2);
+	}
+
+	/**
+	 * @param depth   depth of recursion
+	 * @return        a scanner for the Heighway dragon curve, which turns back on itself, so it
+	 *                visits some pixels twice and leaves others unvisited
+	 */
+	static LSystemScanner dragon(int depth) {
+		Lindenmeyer lind = new Lindenmeyer();
+		lind.put('X', "X+YF+");
+		lind.put('Y', "-FX-Y");
+		return new LSystemScanner(lind, "FX", depth, 90, "F", 1);
+	}
+
+	String getType() {
+		return type;
+	}
+
+	/**
+	 * Expands the productions and walks them with a turtle, setting d, height and n
+	 * and leaving the packed coordinates of the pixels visited in compiled.
+	 */
+	private void compile() {
+		Lindenmeyer.Expansion exp = lind.expand(axiom, depth);
+		// the steps in each direction, exact for angles that are multiples of 90 degrees
+		int turns = (int) Math.round(360 / angle);
+		double[] dx = new double[turns];
+		double[] dy = new double[turns];
+		for (int k = 0; k < turns; k++) {
+			double a = Math.toRadians(k * angle);
+			dx[k] = snap(Math.cos(a) * step);
+			dy[k] = snap(Math.sin(a) * step);
+		}
+		int[] xs = new int[1024];
+		int[] ys = new int[1024];
+		// the turtle starts at (0, 0), heading along the x axis
+		int count = 1;
+		double tx = 0;
+		double ty = 0;
+		int dir = 0;
+		while (exp.hasNext()) {
+			char ch = exp.next();
+			if ('+' == ch) {
+				dir = (dir + 1) % turns;
+				continue;
+			}
+			if ('-' == ch) {
+				dir = (dir + turns - 1) % turns;
+				continue;
+			}
+			if (drawChars.indexOf(ch) < 0) continue;
+			tx += dx[dir];
+			ty += dy[dir];
+			if (count == xs.length) {
+				xs = Arrays.copyOf(xs, 2 * count);
+				ys = Arrays.copyOf(ys, 2 * count);
+			}
+			xs[count] = (int) Math.round(tx);
+			ys[count] = (int) Math.round(ty);
+			count++;
+		}
+		// move the curve to the origin and keep only the first visit to each pixel
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		d = maxX - minX + 1;
+		height = maxY - minY + 1;
+		boolean[] visited = new boolean[d * height];
+		int m = 0;
+		for (int i = 0; i < count; i++) {
+			int x = xs[i] - minX;
+			int y = ys[i] - minY;
+			if (visited[y * d + x]) continue;
+			visited[y * d + x] = true;
+			xs[m] = x;
+			ys[m] = y;
+			m++;
+		}
+		n = m;
+		compiled = new int[m];
+		for (int i = 0; i < m; i++) {
+			compiled[i] = ScanTable.pack(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * @return v, rounded to the nearest integer if it is within rounding error of it
+	 */
+	private static double snap(double v) {
+		double r = Math.rint(v);
+		return Math.abs(v - r) < 1e-9 ? r : v;
+	}
+
+	/**
+	 * Copies compiled coordinates into coords, compiling them again if necessary.
+	 * Called by loadTable() when ScannerCache doesn't have them yet.
+	 */
+	void generateCoords() {
+		if (null == compiled) compile();
+		System.arraycopy(compiled, 0, coords, 0, n);
+	}
+
+	/** no internal coordinates to swap */
+	public void swapXY() {
+
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/* (non-Javadoc)
+	 * returns a list of coordinate points that define the scan.
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuffer buf = new StringBuffer();
+		buf.append("L-system "+ axiom +" "+ lind +" depth "+ depth +", "+ this.d +" x "+ this.height +"\n  ");
+		for (int i = 0; i < n; i++) {
+			buf.append("("+ xcoord(i) +", "+ ycoord(i) +") ");
+		}
+		buf.append("\n");
+		return buf.toString();
+	}
+}
@@ -1,6 +1,8 @@
 package net.paulhertz.glitchsort;
 
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.NoSuchElementException;
 
 /**
  * Implements a simple Lindenmeyer system (L-system), 
@@ -12,6 +14,7 @@ import java.util.Hashtable;
  * Load final output strings into codeTable with encode(), retrieve them with decode().
  * Generally, every key entered into transTable should also appear in codeTable, but
  * you could also write or skip characters that don't appear in the codeTable. 
+ * For deep expansions, use expand(), which produces symbols one at a time instead of building strings.
  * 
  */
 public class Lindenmeyer extends Object {
@@ -20,6 +23,8 @@ public class Lindenmeyer extends Object {
   private Hashtable<Character, String> transTable;
   /** code table for interpreting output string derived from transistion table */
   private Hashtable<Character, String> codeTable;
+  /** productions indexed by character, null for characters without a production */
+  private char[][] rules = new char[128][];
   
   
   /**
@@ -48,6 +53,9 @@ public class Lindenmeyer extends Object {
    */
   public void put(Character key, String value) {
     transTable.put(key, value);
+    char ch = key.charValue();
+    if (ch >= rules.length) rules = Arrays.copyOf(rules, ch + 1);
+    rules[ch] = value.toCharArray();
   }
 
   /**
@@ -68,22 +76,104 @@ public class Lindenmeyer extends Object {
     codeTable.put(key, value);
   }
   
+	/**
+	 * Applies the productions to a string levels times and appends the result to sb.
+	 * @param tokens   the string to expand
+	 * @param levels   number of times to apply the productions
+	 * @param sb       a StringBuffer for the expanded string
+	 */
 	public void expandString(String tokens, int levels, StringBuffer sb) {
-		//System.out.println("level is "+ levels);
-		StringBuffer temp = new StringBuffer(2 * tokens.length());
-		for (int i = 0; i < tokens.length(); i++) {
-			char ch = tokens.charAt(i);
-			String val = get(ch);
-			temp.append(val);
-		}
-		if (levels > 0) {
-			expandString(temp.toString(), levels - 1, sb);
-		}
-		else {
-			sb.append(tokens);	
+		Expansion exp = expand(tokens, levels);
+		while (exp.hasNext()) {
+			sb.append(exp.next());
 		}
 	}
 	
+  /**
+   * Returns the symbols of the expansion of a string, as expandString() would write them,
+   * generated depth first as they are read. Only one production per level is held at a time, 
+   * so memory use depends on the number of levels, not on the length of the expansion. 
+   * Productions put() after the Expansion is created may not be seen.
+   * @param tokens   the string to expand
+   * @param levels   number of times to apply the productions
+   * @return         an Expansion
+   */
+  public Expansion expand(String tokens, int levels) {
+    return new Expansion(rules, tokens.toCharArray(), levels);
+  }
+  
+  /**
+   * Iterates over the symbols of an expanded string, see expand().
+   */
+  public static final class Expansion {
+    /** productions indexed by character */
+    private final char[][] rules;
+    /** number of times to apply the productions */
+    private final int levels;
+    /** the string being read at each level, the tokens at level 0 */
+    private final char[][] strings;
+    /** position of the next symbol to read at each level */
+    private final int[] pos;
+    /** deepest level we are reading */
+    private int top;
+    /** the next symbol, if hasPending is true */
+    private char pending;
+    private boolean hasPending = false;
+
+    Expansion(char[][] rules, char[] tokens, int levels) {
+      this.rules = rules;
+      this.levels = Math.max(levels, 0);
+      this.strings = new char[this.levels + 1][];
+      this.pos = new int[this.levels + 1];
+      strings[0] = tokens;
+      top = 0;
+    }
+
+    /**
+     * Descends through productions until a symbol at the last level is found. 
+     * A symbol without a production expands to itself at every level, so it's returned at once.
+     * @return true if there is a symbol to return
+     */
+    private boolean advance() {
+      while (!hasPending) {
+        if (top < 0) return false;
+        if (pos[top] >= strings[top].length) {
+          top--;
+          continue;
+        }
+        char ch = strings[top][pos[top]++];
+        char[] prod = (top == levels || ch >= rules.length) ? null : rules[ch];
+        if (null == prod) {
+          pending = ch;
+          hasPending = true;
+        }
+        else {
+          top++;
+          strings[top] = prod;
+          pos[top] = 0;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return true if there are more symbols
+     */
+    public boolean hasNext() {
+      return advance();
+    }
+
+    /**
+     * @return the next symbol
+     * @throws NoSuchElementException if there are no more symbols
+     */
+    public char next() {
+      if (!advance()) throw new NoSuchElementException();
+      hasPending = false;
+      return pending;
+    }
+  }
+	
 	public StringBuffer interpretString(StringBuffer sb, boolean isKeepCharacters) {
 		StringBuffer temp = new StringBuffer(sb.length());
 		for (int i = 0; i < sb.length(); i++) {
@@ -98,6 +188,17 @@ public class Lindenmeyer extends Object {
 		}
 		return temp;
 	}
+	
+  /**
+   * @return the productions in the transition table, sorted by key, as "key=value;" pairs
+   */
+  public String toString() {
+    StringBuffer buf = new StringBuffer();
+    for (Character key : new java.util.TreeSet<Character>(transTable.keySet())) {
+      buf.append(key).append('=').append(transTable.get(key)).append(';');
+    }
+    return buf.toString();
+  }
 
   
 }
@@ -1,32 +1,17 @@
 package net.paulhertz.glitchsort;
 
-import java.util.Arrays;
 import processing.core.*;
 import net.paulhertz.aifile.*;
 
-class MooreScanner implements PixelScannerINF {
+class MooreScanner extends AbstractScanner {
+	  /** name of this type of scan in ScannerCache */
+	  static final String TYPE = "Moore";
 	  /** x coord used internally */
 	  private int moorex;
 	  /** Hilbert y coord, ised internally */
 	  private int moorey;
-	  /** x coordinates */
-	  int[] xcoords;
-	  /** y coordinates */
-	  int[] ycoords;
-	  /** flipped x coordinates */
-	  int[] flipXcoords;
-	  /** flipped y coordinates */
-	  int[] flipYcoords;
-	  /** index map */
-	  private int[] indexMap;
 	  /** the depth of recursion of the Hilbert curve */
 	  int depth = 1;
-	  /** the dimension of an edge of the square block of pixels */
-	  int d;
-	  /** the total number of points in the curve */
-	  int n;
-	  /** the verbose */
-	  boolean verbose = false;
 
 	  /**
 	   * @param depth   the depth of recursion that determines the number of pixels on an edge of the scan block
@@ -35,16 +20,18 @@ class MooreScanner implements PixelScannerINF {
 	    this.depth = depth;
 	    d = (int) Math.round(Math.pow(2, depth));
 	    n = d * d;
-	    xcoords = new int[n];
-	    ycoords = new int[n];
-	    indexMap = new int[n];
-	    generateCoords();
+	    loadTable();
+	  }
+
+	  String getType() {
+	    return TYPE;
 	  }
 	  
 	  /**
 	   * Generates coordinates of a block of pixels of specified dimensions, offset from (0,0).
+	   * Called by loadTable() when ScannerCache doesn't have them yet.
 	   */
-	  public void generateCoords() {
+	  void generateCoords() {
 	    int index = 0;
 	    int hilbDepth;
 	    if (depth > 1) { 
@@ -58,104 +45,54 @@ class MooreScanner implements PixelScannerINF {
 	    hilb.swapCoords();
 	    hilb.flipX();
 	    for (int i = 0; i < hilb.getSize(); i++) {
-	      xcoords[index] = hilb.xcoord(i);
-	      ycoords[index] = hilb.ycoord(i);
+	      setCoord(index, hilb.xcoord(i), hilb.ycoord(i));
 	      index++;
 	    }
 	    // shift y coordinate by Hilbert scanner's width 
 	    int hilbWidth = hilb.getBlockWidth();
 	    for (int i = 0; i < hilb.getSize(); i++) {
-	      xcoords[index] = hilb.xcoord(i);
-	      ycoords[index] = hilb.ycoord(i) + hilbWidth;
+	      setCoord(index, hilb.xcoord(i), hilb.ycoord(i) + hilbWidth);
 	      index++;
 	    }
 	    hilb.flipX();
 	    hilb.flipY();
 	    // shift x and y coordinates by Hilbert scanner's width 
 	    for (int i = 0; i < hilb.getSize(); i++) {
-	      xcoords[index] = hilb.xcoord(i) + hilbWidth;
-	      ycoords[index] = hilb.ycoord(i) + hilbWidth;
+	      setCoord(index, hilb.xcoord(i) + hilbWidth, hilb.ycoord(i) + hilbWidth);
 	      index++;
 	    }
 	    // shift x coordinate by Hilbert scanner's width 
 	    for (int i = 0; i < hilb.getSize(); i++) {
-	      xcoords[index] = hilb.xcoord(i) + hilbWidth;
-	      ycoords[index] = hilb.ycoord(i);
+	      setCoord(index, hilb.xcoord(i) + hilbWidth, hilb.ycoord(i));
 	      index++;
 	    }
-	    // now set up indexing
-	    index = 0;
-	    for (int i = 0; i < n; i++) {
-	      moorex = xcoords[i];
-	      moorey = ycoords[i];
-	      index = moorex + d * moorey;
-	      indexMap[index] = i;
-	    }
-	  }
-
-
-	  public void swapXY() {
-	    int temp = moorey;
-	    moorey = moorex;
-	    moorex = temp;
-	  }
-
-	  public void flipX() {
-	    int m = d - 1;
-	    for (int i = 0; i < xcoords.length; i++) {
-	      xcoords[i] = m - xcoords[i];
-	    }
 	  }
 
-	  public void flipY() {
-	    int m = d - 1;
-	    for (int i = 0; i < ycoords.length; i++) {
-	      ycoords[i] = m - ycoords[i];
-	    }
-	  }
-	  
-	  
-	 public void swapCoords() {
-	   int[] temp = Arrays.copyOf(xcoords, xcoords.length);
-	   xcoords = ycoords;
-	   ycoords = temp;
-	 }
-
 
 	  /**
-	   * @param pix   an array of pixels
-	   * @param w     width of the image represented by the array of pixels
-	   * @param h     height of the image represented by the array of pixels
-	   * @param x     x-coordinate of the location in the image to scan
-	   * @param y     y-coordinate of the location in the image to scan
-	   * @return      an array in the order determined by the Hilbert scan
+	   * Computes the index of a point from the Hilbert curve in its quadrant, so lookup() doesn't need an index map.
 	   */
-	  public int[] pluck(int[] pix, int w, int h, int x, int y) {
-	    int len = d * d;
-	    int[] out = new int[len];
-	    for (int i = 0; i < len; i++) {
-	      int p = (y + ycoords[i]) * w + (x) + xcoords[i];
-	      if (verbose) {
-	        System.out.println("x = "+ x +", y = "+ y +", i = "+ i +", p = "+ p +", hilbert = ("+ xcoords[i] +", "+ ycoords[i] +")");
-	      }
-	      out[i] = pix[p];
+	  int lookupBase(int x, int y) {
+	    int hilbWidth = d / 2;
+	    int quadrant;
+	    int orient;
+	    // quadrants in the order generateCoords() visits them, and the orientations of their Hilbert curves
+	    if (x < hilbWidth) {
+	      quadrant = (y < hilbWidth) ? 0 : 1;
+	      orient = ScanTable.TRANSPOSE | ScanTable.FLIP_X;
 	    }
-	    return out;
+	    else {
+	      quadrant = (y < hilbWidth) ? 3 : 2;
+	      orient = ScanTable.TRANSPOSE | ScanTable.FLIP_Y;
+	    }
+	    int c = ScanTable.unorient(orient, hilbWidth, hilbWidth, x % hilbWidth, y % hilbWidth);
+	    return quadrant * hilbWidth * hilbWidth + HilbertScanner.hilbertIndex(hilbWidth, ScanTable.unpackX(c), ScanTable.unpackY(c));
 	  }
 
-	  /**
-	   * @param pix      an array of pixels
-	   * @param sprout   an array of d * d pixels to write to the array of pixels
-	   * @param w        width of the image represented by the array of pixels
-	   * @param h        height of the image represented by the array of pixels
-	   * @param x        x-coordinate of the location in the image to write to
-	   * @param y        y-coordinate of the location in the image to write to
-	   */
-	  public void plant(int[] pix, int[] sprout, int w, int h, int x, int y) {
-	    for (int i = 0; i < d * d; i++) {
-	      int p = (y + ycoords[i]) * w + (x) + xcoords[i];
-	      pix[p] = sprout[i];
-	    }
+	  public void swapXY() {
+	    int temp = moorey;
+	    moorey = moorex;
+	    moorex = temp;
 	  }
 
 	  /* (non-Javadoc)
@@ -165,8 +102,8 @@ class MooreScanner implements PixelScannerINF {
 	  public String toString() {
 	    String buf = new String();
 	    buf += ("Moore curve order: "+ this.d +"\n  ");
-	    for (int i = 0; i < xcoords.length; i++) {
-	      buf += ("("+ xcoords[i] +", "+ ycoords[i] +") ");
+	    for (int i = 0; i < n; i++) {
+	      buf += ("("+ xcoord(i) +", "+ ycoord(i) +") ");
 	    }
 	    buf += ("\n");
 	    return buf;
@@ -177,35 +114,6 @@ class MooreScanner implements PixelScannerINF {
 	    return depth;
 	  }
 
-	  public int getBlockWidth() {
-	    return d;
-	  }
-
-	  public int getSize() {
-	    return indexMap.length;
-	  }
-
-	  public boolean isVerbose() {
-	    return verbose;
-	  }
-
-	  public void setVerbose(boolean verbose) {
-	    this.verbose = verbose;
-	  }
-	  
-	  // get the index in the Moore curve of a specified Cartesian point
-	  public int lookup(int x, int y) {
-	    return indexMap[x + d * y];
-	  }
-
-	  public int xcoord(int pos) {
-	    return xcoords[pos];
-	  }
-
-	  public int ycoord(int pos) {
-	    return ycoords[pos];
-	  }
-
 	  /**
 	   * Rotates an array of ints left by d values. Uses efficient "Three Rotation" algorithm.
 	   * @param arr   array of ints to rotate
@@ -236,10 +144,12 @@ class MooreScanner implements PixelScannerINF {
 	  }
 
 	  public void rotateXLeft(int offset) {
+	    detach();
 	    rotateLeft(xcoords, offset);
 	  }
 
 	  public void rotateYLeft(int offset) {
+	    detach();
 	    rotateLeft(ycoords, offset);
 	  }
 	}
\ No newline at end of file
@@ -0,0 +1,233 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Implements Morton (Z-order) scanning of a square block of pixels with an edge dimension that is a power of 2.
+ * The index of a pixel in the scan interleaves the bits of its x and y coordinates, so the scan visits
+ * 2 x 2 blocks, then 4 x 4 blocks made of them, and so on: less continuous than a Hilbert scan, but with
+ * the same locality and a blockier, stepped look.
+ * <p>
+ * Unlike the other scanners, MortonScanner stores no coordinates: coordinates are computed from the index
+ * as they are needed by splitting and merging bits through two 256 entry tables, so a scanner for a
+ * block of any size uses a few bytes of memory.
+ * </p>
+ */
+class MortonScanner implements PixelScannerINF {
+	/** name of this type of scan */
+	static final String TYPE = "Morton";
+	/** for each byte, its even bits packed into the low nibble and its odd bits into the high nibble */
+	private static final int[] SPLIT = new int[256];
+	/** for each byte, its bits spread out to the even bits of a short */
+	private static final int[] SPREAD = new int[256];
+	static {
+		for (int b = 0; b < 256; b++) {
+			int even = 0;
+			int odd = 0;
+			int spread = 0;
+			for (int i = 0; i < 4; i++) {
+				even |= ((b >> (2 * i)) & 1) << i;
+				odd |= ((b >> (2 * i + 1)) & 1) << i;
+			}
+			for (int i = 0; i < 8; i++) {
+				spread |= ((b >> i) & 1) << (2 * i);
+			}
+			SPLIT[b] = even | odd << 4;
+			SPREAD[b] = spread;
+		}
+	}
+	/** the depth of recursion, d = 2^depth */
+	int depth;
+	/** the dimension of an edge of the square block of pixels */
+	int d;
+	/** the total number of points in the scan */
+	int n;
+	/** orientation of the scan, a combination of ScanTable.TRANSPOSE, ScanTable.FLIP_X and ScanTable.FLIP_Y */
+	int orientation = 0;
+	/** the verbose */
+	boolean verbose = false;
+
+	/**
+	 * @param depth   the depth of recursion that determines the number of pixels on an edge of the scan block, 0..15
+	 */
+	public MortonScanner(int depth) {
+		if (depth < 0 || depth > 15) {
+			throw new IllegalArgumentException("MortonScanner depth must be between 0 and 15, got "+ depth);
+		}
+		this.depth = depth;
+		d = 1 << depth;
+		n = d * d;
+	}
+
+	/**
+	 * @param pos   an index in the scan
+	 * @return      the x coordinate at pos in orientation 0, the even bits of pos
+	 */
+	static int mortonX(int pos) {
+		return (SPLIT[pos & 0xFF] & 0x0F) | (SPLIT[(pos >>> 8) & 0xFF] & 0x0F) << 4
+			| (SPLIT[(pos >>> 16) & 0xFF] & 0x0F) << 8 | (SPLIT[pos >>> 24] & 0x0F) << 12;
+	}
+
+	/**
+	 * @param pos   an index in the scan
+	 * @return      the y coordinate at pos in orientation 0, the odd bits of pos
+	 */
+	static int mortonY(int pos) {
+		return SPLIT[pos & 0xFF] >> 4 | (SPLIT[(pos >>> 8) & 0xFF] >> 4) << 4
+			| (SPLIT[(pos >>> 16) & 0xFF] >> 4) << 8 | (SPLIT[pos >>> 24] >> 4) << 12;
+	}
+
+	/**
+	 * @param x   an x coordinate in orientation 0, less than 2^15
+	 * @param y   a y coordinate in orientation 0, less than 2^15
+	 * @return    the index of (x, y) in the scan, the bits of x and y interleaved
+	 */
+	static int mortonIndex(int x, int y) {
+		return SPREAD[x & 0xFF] | SPREAD[x >>> 8] << 16 | (SPREAD[y & 0xFF] | SPREAD[y >>> 8] << 16) << 1;
+	}
+
+	public void flipX() {
+		orientation = ScanTable.flipX(orientation);
+	}
+
+	public void flipY() {
+		orientation = ScanTable.flipY(orientation);
+	}
+
+	/** no internal coordinates to swap, see swapCoords() */
+	public void swapXY() {
+
+	}
+
+	/**
+	 * Swaps the x and y coordinates in the map.
+	 */
+	public void swapCoords() {
+		orientation = ScanTable.transpose(orientation);
+	}
+
+	public void setOrientation(int orientation) {
+		this.orientation = orientation & 7;
+	}
+
+	public int getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * @param pix   an array of pixels
+	 * @param w     width of the image represented by the array of pixels
+	 * @param h     height of the image represented by the array of pixels
+	 * @param x     x-coordinate of the location in the image to scan
+	 * @param y     y-coordinate of the location in the image to scan
+	 * @return      an array in the order determined by the scan
+	 */
+	public int[] pluck(int[] pix, int w, int h, int x, int y) {
+		return pluck(pix, w, h, x, y, new int[n]);
+	}
+
+	/**
+	 * @param pix   an array of pixels
+	 * @param w     width of the image represented by the array of pixels
+	 * @param h     height of the image represented by the array of pixels
+	 * @param x     x-coordinate of the location in the image to scan
+	 * @param y     y-coordinate of the location in the image to scan
+	 * @param dst   an array of at least n = d * d pixels to write to
+	 * @return      dst, with its first n values in the order determined by the scan
+	 */
+	public int[] pluck(int[] pix, int w, int h, int x, int y, int[] dst) {
+		int p0 = y * w + x;
+		for (int i = 0; i < n; i++) {
+			int p = p0 + offset(i, w);
+			if (verbose) {
+				System.out.println("x = "+ x +", y = "+ y +", i = "+ i +", p = "+ p +", "+ TYPE +" = ("+ xcoord(i) +", "+ ycoord(i) +")");
+			}
+			dst[i] = pix[p];
+		}
+		return dst;
+	}
+
+	/**
+	 * @param pix      an array of pixels
+	 * @param sprout   an array of n = d * d pixels to write to the array of pixels
+	 * @param w        width of the image represented by the array of pixels
+	 * @param h        height of the image represented by the array of pixels
+	 * @param x        x-coordinate of the location in the image to write to
+	 * @param y        y-coordinate of the location in the image to write to
+	 */
+	public void plant(int[] pix, int[] sprout, int w, int h, int x, int y) {
+		int p0 = y * w + x;
+		for (int i = 0; i < n; i++) {
+			pix[p0 + offset(i, w)] = sprout[i];
+		}
+	}
+
+	/**
+	 * @param pos   an index in the scan
+	 * @param w     width of an image
+	 * @return      offset of the point at pos from the top left corner of a block in an image of width w
+	 */
+	private int offset(int pos, int w) {
+		return ycoord(pos) * w + xcoord(pos);
+	}
+
+	/* (non-Javadoc)
+	 * returns a list of coordinate points that define a Morton scan of order d.
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuffer buf = new StringBuffer();
+		buf.append("Morton order: "+ this.d +"\n  ");
+		for (int i = 0; i < n; i++) {
+			buf.append("("+ xcoord(i) +", "+ ycoord(i) +") ");
+		}
+		buf.append("\n");
+		return buf.toString();
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/** return the width of the block of pixels */
+	public int getBlockWidth() {
+		return d;
+	}
+
+	/** return the height of the block of pixels, the same as its width */
+	public int getBlockHeight() {
+		return d;
+	}
+
+	/** return the number of pixel values mapped in this PixelScannerINF instance */
+	public int getSize() {
+		return n;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/** return the index of a point in the mapped representation */
+	public int lookup(int x, int y) {
+		// undo the orientation: flips first, then transpose
+		if ((orientation & ScanTable.FLIP_X) != 0) x = d - 1 - x;
+		if ((orientation & ScanTable.FLIP_Y) != 0) y = d - 1 - y;
+		if ((orientation & ScanTable.TRANSPOSE) != 0) return mortonIndex(y, x);
+		return mortonIndex(x, y);
+	}
+
+	/** return the x coordinate at a specified index in the map */
+	public int xcoord(int pos) {
+		int x = (orientation & ScanTable.TRANSPOSE) != 0 ? mortonY(pos) : mortonX(pos);
+		return (orientation & ScanTable.FLIP_X) != 0 ? d - 1 - x : x;
+	}
+
+	/** return the y coordinate at a specified index in the map */
+	public int ycoord(int pos) {
+		int y = (orientation & ScanTable.TRANSPOSE) != 0 ? mortonX(pos) : mortonY(pos);
+		return (orientation & ScanTable.FLIP_Y) != 0 ? d - 1 - y : y;
+	}
+}
@@ -0,0 +1,98 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * Implements Peano curve scanning of a square block of pixels with an edge dimension that is a power of 3.
+ * Like a Hilbert curve, the Peano curve is continuous and locality preserving, but it divides the block
+ * into 3 x 3 sub-blocks, traversed in a serpentine, instead of 2 x 2. Since its block edges are powers of 3,
+ * a Peano scan can't supply the power of 2 buffers that FFTs expect.
+ * Provides methods for reading (pluck) and writing (plant) from an array of pixels.
+ */
+class PeanoScanner extends AbstractScanner {
+	/** name of this type of scan in ScannerCache */
+	static final String TYPE = "Peano";
+	/** the depth of recursion of the Peano curve, d = 3^depth */
+	int depth;
+
+	/**
+	 * @param depth   the depth of recursion that determines the number of pixels on an edge of the scan block
+	 */
+	public PeanoScanner(int depth) {
+		this.depth = depth;
+		d = 1;
+		for (int i = 0; i < depth; i++) {
+			d *= 3;
+		}
+		n = d * d;
+		loadTable();
+	}
+
+	/**
+	 * @param order   an edge dimension
+	 * @return        the depth of the largest Peano scan with an edge no larger than order, at least 1
+	 */
+	static int depthFor(int order) {
+		int depth = 1;
+		for (int d = 9; d <= order; d *= 3) {
+			depth++;
+		}
+		return depth;
+	}
+
+	String getType() {
+		return TYPE;
+	}
+
+	/**
+	 * Generates coordinates of a block of pixels of specified dimensions, offset from (0,0).
+	 * Called by loadTable() when ScannerCache doesn't have them yet.
+	 * Uses Peano's own construction: the base 3 digits of the index alternate between x and y,
+	 * and a digit is reversed (2 - digit) when the sum of the preceding digits of the other
+	 * coordinate is odd.
+	 */
+	void generateCoords() {
+		for (int i = 0; i < n; i++) {
+			int t = i;
+			int[] digits = new int[2 * depth];
+			for (int k = 2 * depth - 1; k >= 0; k--) {
+				digits[k] = t % 3;
+				t /= 3;
+			}
+			int x = 0;
+			int y = 0;
+			int xsum = 0;
+			int ysum = 0;
+			for (int k = 0; k < depth; k++) {
+				int a = digits[2 * k];
+				int b = digits[2 * k + 1];
+				x = 3 * x + ((ysum & 1) == 0 ? a : 2 - a);
+				xsum += a;
+				y = 3 * y + ((xsum & 1) == 0 ? b : 2 - b);
+				ysum += b;
+			}
+			setCoord(i, x, y);
+		}
+	}
+
+	/** no internal coordinates to swap */
+	public void swapXY() {
+
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/* (non-Javadoc)
+	 * returns a list of coordinate points that define a Peano scan of order d.
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuffer buf = new StringBuffer();
+		buf.append("Peano order: "+ this.d +"\n  ");
+		for (int i = 0; i < n; i++) {
+			buf.append("("+ xcoord(i) +", "+ ycoord(i) +") ");
+		}
+		buf.append("\n");
+		return buf.toString();
+	}
+}
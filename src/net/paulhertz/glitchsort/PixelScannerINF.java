@@ -20,6 +20,16 @@ public interface PixelScannerINF {
 	/** swap the x and y coordinates in the map */
 	abstract void swapXY();
 	
+	/**
+	 * Selects one of the 8 orientations of the scan, the rotations and reflections of a square block,
+	 * as a combination of the flags ScanTable.TRANSPOSE, ScanTable.FLIP_X and ScanTable.FLIP_Y.
+	 * @param orientation   an orientation, 0..7
+	 */
+	abstract void setOrientation(int orientation);
+	
+	/** return the current orientation, 0..7, see setOrientation() */
+	abstract int getOrientation();
+	
 	
 	/**
 	 * @param pix   an array of pixels
@@ -32,6 +42,21 @@ public interface PixelScannerINF {
 	abstract int[] pluck(int[] pix, int w, int h, int x, int y);
 	
 	/**
+	 * Reads pixels in scan order into a buffer supplied by the caller, so that loops over blocks
+	 * can reuse one buffer instead of allocating an array for every block.
+	 * @param pix   an array of pixels
+	 * @param w     width of the image represented by the array of pixels
+	 * @param h     height of the image represented by the array of pixels
+	 * @param x     x-coordinate of the location in the image to scan
+	 * @param y     y-coordinate of the location in the image to scan
+	 * @param dst   an array of at least getSize() pixels to write to
+	 * @return      dst, with the first getSize() values in scan order
+	 */
+	abstract int[] pluck(int[] pix, int w, int h, int x, int y, int[] dst);
+	
+	/**
+	 * Writes the first getSize() values of sprout to the array of pixels. Only those values are read, 
+	 * so sprout can be a reused buffer filled by pluck(pix, w, h, x, y, dst).
 	 * @param pix      an array of pixels
 	 * @param sprout   an array of d * d pixels to write to the array of pixels
 	 * @param w        width of the image represented by the array of pixels
@@ -50,6 +75,9 @@ public interface PixelScannerINF {
 	/** return the width of the pixel array mapped in this PixelScannerINF instance */
 	abstract int getBlockWidth();  
 	  
+	/** return the height of the pixel array mapped in this PixelScannerINF instance, the width for square scans */
+	abstract int getBlockHeight();  
+	  
 	/** return the number of pixel values mapped in this PixelScannerINF instance */
 	abstract int getSize();
   
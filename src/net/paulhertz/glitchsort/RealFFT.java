@@ -0,0 +1,386 @@
+package net.paulhertz.glitchsort;
+
+import java.util.HashMap;
+
+/**
+ * A fast Fourier transform for real samples, such as a channel of a block of pixels, that needs no audio
+ * library or audio device. A buffer of n samples is transformed as a complex buffer of n / 2 samples,
+ * even samples in the real part and odd samples in the imaginary part, and the result is split into the
+ * n / 2 + 1 bands of the spectrum of a real signal, about twice as fast as a complex transform of n samples.
+ * <p>
+ * Two buffers of n real samples can also be transformed together, as one complex buffer of n samples,
+ * with forwardPair() and inversePair(), which put the second spectrum in another RealFFT of the same size.
+ * <p>
+ * Twiddle factors and bit reversal tables are computed once for each size and shared by all instances.
+ * The spectrum and work arrays are allocated once, in the constructor or on the first paired transform,
+ * so forward() and inverse() allocate nothing. Bands, frequencies and scaling behave as in Minim's FFT, including the int sample rate and
+ * the half width first and last bands, so RealFFT gives the same glitches.
+ * </p>
+ */
+public class RealFFT implements Spectrum {
+	/** tables for each size of transform, by timeSize */
+	private static final HashMap<Integer, Tables> tableCache = new HashMap<Integer, Tables>();
+	/** number of samples */
+	final int timeSize;
+	/** number of bands, timeSize / 2 + 1 */
+	final int specSize;
+	/** sample rate, truncated to an int as in Minim */
+	final int sampleRate;
+	/** width of a band in Hz */
+	final float bandWidth;
+	/** size of the complex transform, timeSize / 2 */
+	private final int half;
+	/** real parts of the spectrum */
+	private final float[] real;
+	/** imaginary parts of the spectrum */
+	private final float[] imag;
+	/** real parts of the complex work buffer */
+	private final float[] zr;
+	/** imaginary parts of the complex work buffer */
+	private final float[] zi;
+	/** real parts of the complex work buffer for paired transforms, timeSize floats */
+	private float[] pairRe;
+	/** imaginary parts of the complex work buffer for paired transforms, timeSize floats */
+	private float[] pairIm;
+	private final Tables tables;
+
+	/**
+	 * Cosines and sines of 2 * PI * k / timeSize for k = 0..timeSize / 2, and the bit reversal
+	 * permutations of timeSize / 2 and timeSize indices. The complex transform of timeSize / 2 samples uses
+	 * the even entries of the cosines and sines, the split into bands of a real spectrum and the complex
+	 * transform of timeSize samples for paired transforms use them all.
+	 */
+	static final class Tables {
+		final float[] cos;
+		final float[] sin;
+		final int[] reverse;
+		final int[] pairReverse;
+
+		Tables(int timeSize) {
+			int half = timeSize / 2;
+			cos = new float[half + 1];
+			sin = new float[half + 1];
+			for (int k = 0; k <= half; k++) {
+				double a = 2 * Math.PI * k / timeSize;
+				cos[k] = (float) Math.cos(a);
+				sin[k] = (float) Math.sin(a);
+			}
+			reverse = new int[half];
+			int bits = Integer.numberOfTrailingZeros(half);
+			for (int i = 0; i < half; i++) {
+				reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+			}
+			pairReverse = new int[timeSize];
+			for (int i = 0; i < timeSize; i++) {
+				pairReverse[i] = Integer.reverse(i) >>> (32 - bits - 1);
+			}
+		}
+	}
+
+	/**
+	 * @param timeSize     number of samples in a buffer, a power of 2, at least 2
+	 * @param sampleRate   sample rate in Hz, which determines the frequencies of the bands
+	 */
+	public RealFFT(int timeSize, float sampleRate) {
+		if (timeSize < 2 || Integer.bitCount(timeSize) != 1) {
+			throw new IllegalArgumentException("RealFFT timeSize must be a power of 2, at least 2, got "+ timeSize);
+		}
+		this.timeSize = timeSize;
+		this.specSize = timeSize / 2 + 1;
+		this.sampleRate = (int) sampleRate;
+		this.bandWidth = (2f / timeSize) * (this.sampleRate / 2f);
+		this.half = timeSize / 2;
+		this.real = new float[specSize];
+		this.imag = new float[specSize];
+		this.zr = new float[half];
+		this.zi = new float[half];
+		this.tables = getTables(timeSize);
+	}
+
+	/**
+	 * @param timeSize   number of samples
+	 * @return           shared tables for a transform of timeSize samples
+	 */
+	static Tables getTables(int timeSize) {
+		synchronized (tableCache) {
+			Tables t = tableCache.get(timeSize);
+			if (null == t) {
+				t = new Tables(timeSize);
+				tableCache.put(timeSize, t);
+			}
+			return t;
+		}
+	}
+
+	public int timeSize() {
+		return timeSize;
+	}
+
+	public int specSize() {
+		return specSize;
+	}
+
+	public float getBandWidth() {
+		return bandWidth;
+	}
+
+	public void forward(float[] buffer) {
+		if (buffer.length != timeSize) {
+			throw new IllegalArgumentException("RealFFT.forward: buffer length is "+ buffer.length +", expected "+ timeSize);
+		}
+		int[] reverse = tables.reverse;
+		// pack even samples into the real part and odd samples into the imaginary part, in bit reversed order
+		for (int i = 0; i < half; i++) {
+			int j = reverse[i];
+			zr[j] = buffer[2 * i];
+			zi[j] = buffer[2 * i + 1];
+		}
+		transform(false);
+		// split the transform of the packed samples into the spectrum of the real samples
+		float[] cos = tables.cos;
+		float[] sin = tables.sin;
+		for (int k = 0; k <= half; k++) {
+			int k1 = k == half ? 0 : k;
+			int k2 = k == 0 ? 0 : half - k;
+			float ar = zr[k1], ai = zi[k1];
+			float br = zr[k2], bi = zi[k2];
+			// even part (Z[k] + conj(Z[half - k])) / 2, odd part (Z[k] - conj(Z[half - k])) / 2i
+			float er = 0.5f * (ar + br);
+			float ei = 0.5f * (ai - bi);
+			float or = 0.5f * (ai + bi);
+			float oi = -0.5f * (ar - br);
+			// X[k] = even + W^k * odd, W = exp(-2 * PI * i / timeSize)
+			float c = cos[k];
+			float s = sin[k];
+			real[k] = er + c * or + s * oi;
+			imag[k] = ei + c * oi - s * or;
+		}
+	}
+
+	public void inverse(float[] buffer) {
+		if (buffer.length > timeSize) {
+			throw new IllegalArgumentException("RealFFT.inverse: buffer length is "+ buffer.length +", at most "+ timeSize +" expected");
+		}
+		float[] cos = tables.cos;
+		float[] sin = tables.sin;
+		int[] reverse = tables.reverse;
+		// merge the spectrum into the transform of the packed samples, in bit reversed order
+		for (int k = 0; k < half; k++) {
+			float ar = real[k], ai = imag[k];
+			float br = real[half - k], bi = -imag[half - k];
+			// even part (X[k] + conj(X[half - k])) / 2, odd part (X[k] - conj(X[half - k])) / 2 * W^-k
+			float er = 0.5f * (ar + br);
+			float ei = 0.5f * (ai + bi);
+			float dr = 0.5f * (ar - br);
+			float di = 0.5f * (ai - bi);
+			float c = cos[k];
+			float s = sin[k];
+			float or = dr * c - di * s;
+			float oi = dr * s + di * c;
+			// Z[k] = even + i * odd
+			int j = reverse[k];
+			zr[j] = er - oi;
+			zi[j] = ei + or;
+		}
+		transform(true);
+		// unpack, scaling by 1 / timeSize: half from the complex inverse, 2 from the split
+		float scale = 1.0f / half;
+		for (int i = 0; i < half; i++) {
+			int n = 2 * i;
+			if (n < buffer.length) buffer[n] = zr[i] * scale;
+			if (n + 1 < buffer.length) buffer[n + 1] = zi[i] * scale;
+		}
+	}
+
+	/**
+	 * Performs forward transforms of two buffers of timeSize samples with a single complex transform,
+	 * a in the real part and b in the imaginary part. The spectrum of a is left in this RealFFT and
+	 * the spectrum of b in other, as if each had called forward() on its buffer.
+	 * @param a       samples to transform into this spectrum
+	 * @param b       samples to transform into the spectrum of other
+	 * @param other   a RealFFT of the same size, not this one
+	 */
+	public void forwardPair(float[] a, float[] b, RealFFT other) {
+		if (a.length != timeSize || b.length != timeSize || other.timeSize != timeSize || other == this) {
+			throw new IllegalArgumentException("RealFFT.forwardPair: expected two buffers of "+ timeSize +" samples and another RealFFT of the same size");
+		}
+		allocatePair();
+		int[] reverse = tables.pairReverse;
+		for (int i = 0; i < timeSize; i++) {
+			int j = reverse[i];
+			pairRe[j] = a[i];
+			pairIm[j] = b[i];
+		}
+		transform(pairRe, pairIm, timeSize, false);
+		// split Z = A + iB: A[k] = (Z[k] + conj(Z[n - k])) / 2, B[k] = (Z[k] - conj(Z[n - k])) / 2i
+		float[] re2 = other.real;
+		float[] im2 = other.imag;
+		for (int k = 0; k <= half; k++) {
+			int k2 = k == 0 ? 0 : timeSize - k;
+			float ar = pairRe[k], ai = pairIm[k];
+			float br = pairRe[k2], bi = pairIm[k2];
+			real[k] = 0.5f * (ar + br);
+			imag[k] = 0.5f * (ai - bi);
+			re2[k] = 0.5f * (ai + bi);
+			im2[k] = -0.5f * (ar - br);
+		}
+	}
+
+	/**
+	 * Performs inverse transforms of the spectrum of this RealFFT and of other with a single complex
+	 * transform, writing the samples to a and b, as if each had called inverse() on its buffer.
+	 * The imaginary parts of the first and last bands, which are zero in the spectrum of real samples,
+	 * are ignored.
+	 * @param a       an array of timeSize floats for the samples of this spectrum
+	 * @param b       an array of timeSize floats for the samples of the spectrum of other
+	 * @param other   a RealFFT of the same size, not this one
+	 */
+	public void inversePair(float[] a, float[] b, RealFFT other) {
+		if (a.length != timeSize || b.length != timeSize || other.timeSize != timeSize || other == this) {
+			throw new IllegalArgumentException("RealFFT.inversePair: expected two buffers of "+ timeSize +" samples and another RealFFT of the same size");
+		}
+		allocatePair();
+		int[] reverse = tables.pairReverse;
+		float[] re2 = other.real;
+		float[] im2 = other.imag;
+		// merge into Z = A + iB, in bit reversed order, with A[n - k] = conj(A[k]) and B[n - k] = conj(B[k])
+		pairRe[reverse[0]] = real[0];
+		pairIm[reverse[0]] = re2[0];
+		pairRe[reverse[half]] = real[half];
+		pairIm[reverse[half]] = re2[half];
+		for (int k = 1; k < half; k++) {
+			float ar = real[k], ai = imag[k];
+			float br = re2[k], bi = im2[k];
+			int j = reverse[k];
+			pairRe[j] = ar - bi;
+			pairIm[j] = ai + br;
+			j = reverse[timeSize - k];
+			pairRe[j] = ar + bi;
+			pairIm[j] = br - ai;
+		}
+		transform(pairRe, pairIm, timeSize, true);
+		float scale = 1.0f / timeSize;
+		for (int i = 0; i < timeSize; i++) {
+			a[i] = pairRe[i] * scale;
+			b[i] = pairIm[i] * scale;
+		}
+	}
+
+	/**
+	 * Allocates the work buffer for paired transforms, the first time one is called.
+	 */
+	private void allocatePair() {
+		if (null == pairRe) {
+			pairRe = new float[timeSize];
+			pairIm = new float[timeSize];
+		}
+	}
+
+	/**
+	 * Performs an in place, radix 2 complex transform of the work buffer, which must be in bit reversed order.
+	 * @param isInverse   true for the inverse transform, without scaling, false for the forward transform
+	 */
+	private void transform(boolean isInverse) {
+		transform(zr, zi, half, isInverse);
+	}
+
+	/**
+	 * Performs an in place, radix 2 complex transform of n samples, which must be in bit reversed order.
+	 * @param zr          real parts
+	 * @param zi          imaginary parts
+	 * @param n           number of samples, timeSize or timeSize / 2
+	 * @param isInverse   true for the inverse transform, without scaling, false for the forward transform
+	 */
+	private void transform(float[] zr, float[] zi, int n, boolean isInverse) {
+		float[] cos = tables.cos;
+		float[] sin = tables.sin;
+		float sign = isInverse ? 1 : -1;
+		for (int size = 2; size <= n; size <<= 1) {
+			int halfSize = size >> 1;
+			// twiddle factor k of this stage is exp(-+2 * PI * i * k / size), entry k * stride of the tables
+			int stride = timeSize / size;
+			for (int k = 0; k < halfSize; k++) {
+				float wr = cos[k * stride];
+				float wi = sign * sin[k * stride];
+				for (int i = k; i < n; i += size) {
+					int j = i + halfSize;
+					float tr = wr * zr[j] - wi * zi[j];
+					float ti = wr * zi[j] + wi * zr[j];
+					zr[j] = zr[i] - tr;
+					zi[j] = zi[i] - ti;
+					zr[i] += tr;
+					zi[i] += ti;
+				}
+			}
+		}
+	}
+
+	public float getBand(int i) {
+		if (i < 0) i = 0;
+		if (i > specSize - 1) i = specSize - 1;
+		return (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+	}
+
+	public void setBand(int i, float a) {
+		if (a < 0) return;
+		float amp = (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+		if (amp == 0) {
+			real[i] = a;
+			imag[i] = 0;
+		}
+		else {
+			real[i] = real[i] / amp * a;
+			imag[i] = imag[i] / amp * a;
+		}
+	}
+
+	public void scaleBand(int i, float s) {
+		if (s < 0) return;
+		real[i] *= s;
+		imag[i] *= s;
+	}
+
+	public void scaleFreq(float freq, float s) {
+		scaleBand(freqToIndex(freq), s);
+	}
+
+	public int freqToIndex(float freq) {
+		// freq is lower than the bandwidth of the first band
+		if (freq < bandWidth / 2) return 0;
+		// freq is within the bandwidth of the last band
+		if (freq > sampleRate / 2 - bandWidth / 2) return specSize - 1;
+		return Math.round(timeSize * (freq / (float) sampleRate));
+	}
+
+	public float indexToFreq(int i) {
+		// the first band is half as wide as the others
+		if (i == 0) return bandWidth * 0.25f;
+		// so is the last band
+		if (i == specSize - 1) {
+			return (sampleRate / 2) - (bandWidth / 2) + bandWidth * 0.25f;
+		}
+		return i * bandWidth;
+	}
+
+	public float[] getBands(float[] dst) {
+		for (int i = 0; i < specSize; i++) {
+			dst[i] = (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+		}
+		return dst;
+	}
+
+	public void scaleBands(float[] gains) {
+		for (int i = 0; i < specSize; i++) {
+			real[i] *= gains[i];
+			imag[i] *= gains[i];
+		}
+	}
+
+	public float[] getSpectrumReal() {
+		return real;
+	}
+
+	public float[] getSpectrumImaginary() {
+		return imag;
+	}
+}
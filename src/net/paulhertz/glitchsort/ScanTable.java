@@ -0,0 +1,214 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * An immutable table of the coordinates of a scan over a block of pixels, in one orientation.
+ * Tables are shared by all scanners of the same type, size and orientation through ScannerCache,
+ * so their arrays must never be written to once a table has been constructed.
+ * <p>
+ * An orientation is a combination of the flags TRANSPOSE, FLIP_X and FLIP_Y, applied to the
+ * coordinates of orientation 0 in that order: first x and y are swapped, then x is flipped, then y.
+ * </p>
+ * <p>
+ * Coordinates are packed into one int per point, y in the high 16 bits and x in the low 16 bits, see pack(),
+ * so blocks can be up to 65536 pixels on an edge. The index map, which only lookup() and plant() in small
+ * blocks use, is built the first time it's needed: a table for a 4096 x 4096 block takes 64MB instead of 192MB.
+ * </p>
+ */
+final class ScanTable {
+	/** flip x coordinates */
+	static final int FLIP_X = 1;
+	/** flip y coordinates */
+	static final int FLIP_Y = 2;
+	/** swap x and y coordinates */
+	static final int TRANSPOSE = 4;
+	/** name of the type of scan */
+	final String type;
+	/** width of the block of pixels */
+	final int width;
+	/** height of the block of pixels */
+	final int height;
+	/** orientation of the coordinates, a combination of TRANSPOSE, FLIP_X and FLIP_Y */
+	final int orientation;
+	/** packed coordinates, in scan order */
+	final int[] coords;
+	/** index in the scan of each pixel in the block, in row major order, -1 for pixels the scan doesn't visit */
+	private volatile int[] indexMap;
+	/** linear offsets for the image width most recently passed to offsets() */
+	private volatile Offsets offsets;
+
+	/**
+	 * Linear offsets of the coordinates in an image of a given width, see offsets().
+	 */
+	static final class Offsets {
+		final int imageWidth;
+		final int[] off;
+
+		Offsets(int imageWidth, int[] off) {
+			this.imageWidth = imageWidth;
+			this.off = off;
+		}
+	}
+
+	/**
+	 * Creates a table from an array of packed coordinates, which the table takes ownership of.
+	 * @param type          name of the type of scan
+	 * @param width         width of the block of pixels, no more than 65536
+	 * @param height        height of the block of pixels, no more than 65536
+	 * @param orientation   orientation of the coordinates
+	 * @param coords        coordinates packed with pack(), in scan order
+	 */
+	ScanTable(String type, int width, int height, int orientation, int[] coords) {
+		this.type = type;
+		this.width = width;
+		this.height = height;
+		this.orientation = orientation;
+		this.coords = coords;
+	}
+
+	/**
+	 * @param x   an x coordinate, 0..65535
+	 * @param y   a y coordinate, 0..65535
+	 * @return    x and y packed into one int
+	 */
+	static int pack(int x, int y) {
+		return y << 16 | x;
+	}
+
+	/**
+	 * @param c   packed coordinates
+	 * @return    the x coordinate
+	 */
+	static int unpackX(int c) {
+		return c & 0xFFFF;
+	}
+
+	/**
+	 * @param c   packed coordinates
+	 * @return    the y coordinate
+	 */
+	static int unpackY(int c) {
+		return c >>> 16;
+	}
+
+	/**
+	 * Undoes an orientation, the inverse of oriented() for a single point.
+	 * @param orient   a combination of TRANSPOSE, FLIP_X and FLIP_Y
+	 * @param w        width of the block in orientation orient
+	 * @param h        height of the block in orientation orient
+	 * @param x        x coordinate in orientation orient
+	 * @param y        y coordinate in orientation orient
+	 * @return         the coordinates of the same point in orientation 0, packed
+	 */
+	static int unorient(int orient, int w, int h, int x, int y) {
+		if ((orient & FLIP_X) != 0) x = w - 1 - x;
+		if ((orient & FLIP_Y) != 0) y = h - 1 - y;
+		return (orient & TRANSPOSE) != 0 ? pack(y, x) : pack(x, y);
+	}
+
+	/**
+	 * @return the number of points in the scan
+	 */
+	int size() {
+		return coords.length;
+	}
+
+	/**
+	 * Returns the index in the scan of each pixel in the block, in row major order, building it the first time.
+	 * @return an array of width * height indices, -1 for pixels the scan doesn't visit, which must not be modified
+	 */
+	int[] indexMap() {
+		int[] map = indexMap;
+		if (null == map) {
+			map = new int[width * height];
+			if (coords.length < map.length) java.util.Arrays.fill(map, -1);
+			for (int i = 0; i < coords.length; i++) {
+				int c = coords[i];
+				map[unpackX(c) + width * unpackY(c)] = i;
+			}
+			indexMap = map;
+		}
+		return map;
+	}
+
+	/**
+	 * Derives a table in another orientation from this table, which should have orientation 0.
+	 * @param orient   a combination of TRANSPOSE, FLIP_X and FLIP_Y
+	 * @return         a new ScanTable
+	 */
+	ScanTable oriented(int orient) {
+		int n = coords.length;
+		boolean isTransposed = (orient & TRANSPOSE) != 0;
+		int w = isTransposed ? height : width;
+		int h = isTransposed ? width : height;
+		int[] cs = new int[n];
+		for (int i = 0; i < n; i++) {
+			int x = isTransposed ? unpackY(coords[i]) : unpackX(coords[i]);
+			int y = isTransposed ? unpackX(coords[i]) : unpackY(coords[i]);
+			if ((orient & FLIP_X) != 0) x = w - 1 - x;
+			if ((orient & FLIP_Y) != 0) y = h - 1 - y;
+			cs[i] = pack(x, y);
+		}
+		return new ScanTable(type, w, h, orient, cs);
+	}
+
+	/**
+	 * Returns the offset of each point of the scan from the top left corner of the block, 
+	 * y * imageWidth + x, for an image of the given width. Offsets for 
+	 * the most recent width are kept, since the width rarely changes from one block to the next.
+	 * @param imageWidth   width of an image
+	 * @return             an array of offsets, in scan order, which must not be modified
+	 */
+	int[] offsets(int imageWidth) {
+		Offsets o = offsets;
+		if (null == o || o.imageWidth != imageWidth) {
+			int[] off = new int[coords.length];
+			for (int i = 0; i < off.length; i++) {
+				off[i] = unpackY(coords[i]) * imageWidth + unpackX(coords[i]);
+			}
+			o = new Offsets(imageWidth, off);
+			offsets = o;
+		}
+		return o.off;
+	}
+
+	/**
+	 * @return true if the scan visits every pixel in the block
+	 */
+	boolean isComplete() {
+		return coords.length == width * height;
+	}
+
+	/**
+	 * @return memory used by the coordinates and offsets of this table, in bytes, not counting
+	 *         the index map, which is only built for small blocks or by lookup()
+	 */
+	long getBytes() {
+		return 8L * coords.length;
+	}
+
+	/**
+	 * @param orient   an orientation
+	 * @return         the orientation that results from flipping x coordinates after orient
+	 */
+	static int flipX(int orient) {
+		return orient ^ FLIP_X;
+	}
+
+	/**
+	 * @param orient   an orientation
+	 * @return         the orientation that results from flipping y coordinates after orient
+	 */
+	static int flipY(int orient) {
+		return orient ^ FLIP_Y;
+	}
+
+	/**
+	 * Swapping x and y after flipping x is the same as flipping y after swapping, so transposing
+	 * an orientation exchanges its flips.
+	 * @param orient   an orientation
+	 * @return         the orientation that results from swapping x and y coordinates after orient
+	 */
+	static int transpose(int orient) {
+		return (orient ^ TRANSPOSE) & TRANSPOSE | (orient & FLIP_X) << 1 | (orient & FLIP_Y) >> 1;
+	}
+}
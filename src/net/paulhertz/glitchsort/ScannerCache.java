@@ -0,0 +1,139 @@
+package net.paulhertz.glitchsort;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares immutable coordinate tables among pixel scanners, so that a scanner of a type, size and orientation
+ * that has been used before costs no more than a lookup to create. Without a cache, every command and every
+ * keypress on the audio path regenerates its coordinates: at depth 10, a HilbertScanner makes a million calls
+ * to d2xy(). Tables that have not been used recently are evicted when the cache grows larger than maxBytes.
+ * All methods are synchronized, so scanners can be created on any thread.
+ */
+public class ScannerCache {
+	/** default limit on the memory used by cached tables, in bytes */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	/** limit on the memory used by cached tables, in bytes */
+	private static long maxBytes = DEFAULT_MAX_BYTES;
+	/** memory used by cached tables, in bytes */
+	private static long bytes = 0;
+	/** number of lookups that found a table */
+	private static long hits = 0;
+	/** number of lookups that did not find a table */
+	private static long misses = 0;
+	/** tables in order of access, least recently used first */
+	private static final LinkedHashMap<String, ScanTable> tables = new LinkedHashMap<String, ScanTable>(16, 0.75f, true);
+
+	private ScannerCache() {
+		// static methods only
+	}
+
+	/**
+	 * @return the key of a table in the cache
+	 */
+	private static String key(String type, int width, int height, int orientation) {
+		return type +":"+ width +"x"+ height +":"+ orientation;
+	}
+
+	/**
+	 * Looks up a table.
+	 * @param type          name of the type of scan
+	 * @param width         width of the block of pixels
+	 * @param height        height of the block of pixels
+	 * @param orientation   orientation, see ScanTable
+	 * @return              a cached ScanTable, or null if there is none
+	 */
+	static synchronized ScanTable get(String type, int width, int height, int orientation) {
+		ScanTable table = tables.get(key(type, width, height, orientation));
+		if (null == table) misses++;
+		else hits++;
+		return table;
+	}
+
+	/**
+	 * Adds a table to the cache, evicting the least recently used tables if we go over maxBytes.
+	 * A table that is larger than maxBytes by itself is not cached.
+	 * @param table   a ScanTable
+	 * @return        the table, for convenience
+	 */
+	static synchronized ScanTable put(ScanTable table) {
+		if (table.getBytes() > maxBytes) return table;
+		ScanTable old = tables.put(key(table.type, table.width, table.height, table.orientation), table);
+		if (null != old) bytes -= old.getBytes();
+		bytes += table.getBytes();
+		trim();
+		return table;
+	}
+
+	/**
+	 * Returns a table in another orientation, from the cache or derived from base.
+	 * @param base          a ScanTable in orientation 0
+	 * @param orientation   orientation, see ScanTable
+	 * @return              a ScanTable with the requested orientation
+	 */
+	static synchronized ScanTable orient(ScanTable base, int orientation) {
+		if (base.orientation == orientation) return base;
+		boolean isTransposed = (orientation & ScanTable.TRANSPOSE) != 0;
+		int w = isTransposed ? base.height : base.width;
+		int h = isTransposed ? base.width : base.height;
+		ScanTable table = get(base.type, w, h, orientation);
+		if (null == table) table = put(base.oriented(orientation));
+		return table;
+	}
+
+	/**
+	 * Evicts least recently used tables until we are within maxBytes.
+	 */
+	private static void trim() {
+		Iterator<Map.Entry<String, ScanTable>> iter = tables.entrySet().iterator();
+		while (bytes > maxBytes && iter.hasNext()) {
+			bytes -= iter.next().getValue().getBytes();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Removes all tables from the cache.
+	 */
+	public static synchronized void clear() {
+		tables.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return the maxBytes
+	 */
+	public static synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @param maxBytes the maxBytes to set, tables are evicted if necessary
+	 */
+	public static synchronized void setMaxBytes(long maxBytes) {
+		ScannerCache.maxBytes = maxBytes;
+		trim();
+	}
+
+	/**
+	 * @return memory used by cached tables, in bytes
+	 */
+	public static synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of cached tables
+	 */
+	public static synchronized int size() {
+		return tables.size();
+	}
+
+	/**
+	 * @return a summary of the cache, for the console
+	 */
+	public static synchronized String getStats() {
+		return "scanner cache: "+ tables.size() +" tables, "+ bytes +" bytes, "+ hits +" hits, "+ misses +" misses";
+	}
+}
@@ -0,0 +1,271 @@
+package net.paulhertz.glitchsort;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import processing.core.PApplet;
+
+/**
+ * Collects sorting metrics: comparisons, exchanges, random breaks and the time to sort each band or block,
+ * for each sortPixels(), zigzag() or hilbertScan() command. A command calls beginRun(), SortSelector calls
+ * recordBand() for each band or block it sorts, possibly from several threads, and the command calls endRun(),
+ * which prints a summary, and if isCsvLogging is true, appends a line to a CSV log.
+ * Metrics for the last run and totals are also available through JMX, see register().
+ */
+public class SortMetrics implements SortMetricsMBean {
+	/** name we register under with the platform MBean server */
+	public static final String OBJECT_NAME = "net.paulhertz.glitchsort:type=SortMetrics";
+	/** first line of the CSV log */
+	public static final String CSV_HEADER = "time,command,sorter,compOrder,breakPoint,lineCount,width,height,"
+			+ "bands,comparisons,exchanges,breaks,meanBandNanos,maxBandNanos,elapsedMillis";
+	/** true if we are between beginRun() and endRun() */
+	private boolean isRunning = false;
+	// settings and counts for the current run
+	private String command = "";
+	private String sorter = "";
+	private String compOrder = "";
+	private float breakPoint;
+	private int lineCount;
+	private int width;
+	private int height;
+	private long runStart;
+	private long bands;
+	private long comparisons;
+	private long exchanges;
+	private long breaks;
+	private long bandNanos;
+	private long maxBandNanos;
+	// the last run
+	private String lastCommand = "";
+	private String lastSettings = "";
+	private long lastBands;
+	private long lastComparisons;
+	private long lastExchanges;
+	private long lastBreaks;
+	private double lastMeanBandNanos;
+	private long lastMaxBandNanos;
+	private double lastElapsedMillis;
+	// totals since the last reset
+	private long totalRuns;
+	private long totalBands;
+	private long totalComparisons;
+	private long totalExchanges;
+	private long totalBreaks;
+	private long totalBandNanos;
+	// CSV log
+	private boolean isCsvLogging = false;
+	private String csvPath = "glitchsort_metrics.csv";
+
+
+	public SortMetrics() {
+	}
+
+	/**
+	 * Registers this SortMetrics with the platform MBean server, under OBJECT_NAME.
+	 * @return true if registration succeeded
+	 */
+	public boolean register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			return true;
+		}
+		catch (JMException e) {
+			PApplet.println("could not register sort metrics with JMX: "+ e);
+			return false;
+		}
+	}
+
+	/**
+	 * Starts collecting metrics for a command.
+	 * @param command      name of the command
+	 * @param sorter       type of sorter
+	 * @param compOrder    component order
+	 * @param breakPoint   breakpoint, if random breaks are on, otherwise 1000
+	 * @param lineCount    rows in each band, 0 for commands that sort blocks
+	 * @param width        width of the image
+	 * @param height       height of the image
+	 */
+	public synchronized void beginRun(String command, String sorter, String compOrder, float breakPoint,
+			int lineCount, int width, int height) {
+		this.command = command;
+		this.sorter = sorter;
+		this.compOrder = compOrder;
+		this.breakPoint = breakPoint;
+		this.lineCount = lineCount;
+		this.width = width;
+		this.height = height;
+		bands = 0;
+		comparisons = 0;
+		exchanges = 0;
+		breaks = 0;
+		bandNanos = 0;
+		maxBandNanos = 0;
+		runStart = System.nanoTime();
+		isRunning = true;
+	}
+
+	/**
+	 * Adds the metrics for one band or block to the current run.
+	 * @param bandComparisons   comparisons made sorting the band
+	 * @param bandExchanges     exchanges made sorting the band
+	 * @param bandBreaks        random breaks while sorting the band
+	 * @param nanos             time to sort the band, in nanoseconds
+	 */
+	public synchronized void recordBand(long bandComparisons, long bandExchanges, long bandBreaks, long nanos) {
+		if (!isRunning) return;
+		bands++;
+		comparisons += bandComparisons;
+		exchanges += bandExchanges;
+		breaks += bandBreaks;
+		bandNanos += nanos;
+		if (nanos > maxBandNanos) maxBandNanos = nanos;
+	}
+
+	/**
+	 * Finishes the current run, updates the last run and totals, prints a summary and writes the CSV log.
+	 */
+	public synchronized void endRun() {
+		if (!isRunning) return;
+		isRunning = false;
+		lastCommand = command;
+		lastSettings = "sorter = "+ sorter +", compOrder = "+ compOrder +", breakPoint = "+ breakPoint
+				+", lineCount = "+ lineCount +", image = "+ width +" x "+ height;
+		lastBands = bands;
+		lastComparisons = comparisons;
+		lastExchanges = exchanges;
+		lastBreaks = breaks;
+		lastMeanBandNanos = (bands > 0) ? bandNanos / (double) bands : 0;
+		lastMaxBandNanos = maxBandNanos;
+		lastElapsedMillis = (System.nanoTime() - runStart) / 1.0e6;
+		totalRuns++;
+		totalBands += bands;
+		totalComparisons += comparisons;
+		totalExchanges += exchanges;
+		totalBreaks += breaks;
+		totalBandNanos += bandNanos;
+		PApplet.println("---- "+ command +" metrics: "+ bands +" bands, "+ comparisons +" comparisons, "
+				+ exchanges +" exchanges, "+ breaks +" breaks, "+ Math.round(lastMeanBandNanos) +" ns/band, "
+				+ Math.round(lastElapsedMillis) +" ms");
+		if (isCsvLogging) writeCsv();
+	}
+
+	/**
+	 * Appends the last run to the CSV log, writing a header first if the log is new.
+	 */
+	private void writeCsv() {
+		File file = new File(csvPath);
+		boolean isNew = !file.exists() || file.length() == 0;
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new FileWriter(file, true));
+			if (isNew) out.println(CSV_HEADER);
+			out.println(System.currentTimeMillis() +","+ command +","+ sorter +","+ compOrder +","+ breakPoint +","
+					+ lineCount +","+ width +","+ height +","+ lastBands +","+ lastComparisons +","+ lastExchanges +","
+					+ lastBreaks +","+ Math.round(lastMeanBandNanos) +","+ lastMaxBandNanos +","+ lastElapsedMillis);
+		}
+		catch (IOException e) {
+			PApplet.println("could not write sort metrics to "+ csvPath +": "+ e);
+		}
+		finally {
+			if (null != out) out.close();
+		}
+	}
+
+
+	/***** SortMetricsMBean *****/
+
+	public synchronized String getLastCommand() {
+		return lastCommand;
+	}
+
+	public synchronized String getLastSettings() {
+		return lastSettings;
+	}
+
+	public synchronized long getLastBands() {
+		return lastBands;
+	}
+
+	public synchronized long getLastComparisons() {
+		return lastComparisons;
+	}
+
+	public synchronized long getLastExchanges() {
+		return lastExchanges;
+	}
+
+	public synchronized long getLastBreaks() {
+		return lastBreaks;
+	}
+
+	public synchronized double getLastMeanBandNanos() {
+		return lastMeanBandNanos;
+	}
+
+	public synchronized long getLastMaxBandNanos() {
+		return lastMaxBandNanos;
+	}
+
+	public synchronized double getLastElapsedMillis() {
+		return lastElapsedMillis;
+	}
+
+	public synchronized long getTotalRuns() {
+		return totalRuns;
+	}
+
+	public synchronized long getTotalBands() {
+		return totalBands;
+	}
+
+	public synchronized long getTotalComparisons() {
+		return totalComparisons;
+	}
+
+	public synchronized long getTotalExchanges() {
+		return totalExchanges;
+	}
+
+	public synchronized long getTotalBreaks() {
+		return totalBreaks;
+	}
+
+	public synchronized double getTotalBandMillis() {
+		return totalBandNanos / 1.0e6;
+	}
+
+	public synchronized boolean isCsvLogging() {
+		return isCsvLogging;
+	}
+
+	public synchronized void setCsvLogging(boolean isCsvLogging) {
+		this.isCsvLogging = isCsvLogging;
+	}
+
+	public synchronized String getCsvPath() {
+		return csvPath;
+	}
+
+	public synchronized void setCsvPath(String csvPath) {
+		this.csvPath = csvPath;
+	}
+
+	public synchronized void reset() {
+		totalRuns = 0;
+		totalBands = 0;
+		totalComparisons = 0;
+		totalExchanges = 0;
+		totalBreaks = 0;
+		totalBandNanos = 0;
+	}
+}
@@ -0,0 +1,48 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * JMX management interface for SortMetrics. Values for the last run describe the most recent 
+ * sortPixels(), zigzag() or hilbertScan() command, totals accumulate until reset() is called.
+ */
+public interface SortMetricsMBean {
+	/** @return name of the last command */
+	public String getLastCommand();
+	/** @return settings of the last command: sorter, component order, breakpoint, line count, image size */
+	public String getLastSettings();
+	/** @return number of bands or blocks sorted by the last command */
+	public long getLastBands();
+	/** @return number of comparisons in the last command */
+	public long getLastComparisons();
+	/** @return number of exchanges in the last command */
+	public long getLastExchanges();
+	/** @return number of random breaks in the last command */
+	public long getLastBreaks();
+	/** @return mean time to sort a band or block in the last command, in nanoseconds */
+	public double getLastMeanBandNanos();
+	/** @return longest time to sort a band or block in the last command, in nanoseconds */
+	public long getLastMaxBandNanos();
+	/** @return elapsed time of the last command, in milliseconds */
+	public double getLastElapsedMillis();
+	/** @return number of commands since the last reset */
+	public long getTotalRuns();
+	/** @return number of bands or blocks sorted since the last reset */
+	public long getTotalBands();
+	/** @return number of comparisons since the last reset */
+	public long getTotalComparisons();
+	/** @return number of exchanges since the last reset */
+	public long getTotalExchanges();
+	/** @return number of random breaks since the last reset */
+	public long getTotalBreaks();
+	/** @return total time spent sorting bands or blocks since the last reset, in milliseconds */
+	public double getTotalBandMillis();
+	/** @return true if each run is appended to the CSV log */
+	public boolean isCsvLogging();
+	/** @param isCsvLogging true if each run should be appended to the CSV log */
+	public void setCsvLogging(boolean isCsvLogging);
+	/** @return path to the CSV log */
+	public String getCsvPath();
+	/** @param csvPath path to the CSV log */
+	public void setCsvPath(String csvPath);
+	/** Sets all totals to 0. */
+	public void reset();
+}
@@ -1,5 +1,8 @@
 package net.paulhertz.glitchsort;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import net.paulhertz.glitchsort.GlitchConstants.SorterType;
 import processing.core.*;
 // static import statement (Java 1.5) allows us to use unqualified constant names
@@ -20,7 +23,17 @@ class SortSelector {
 	ShellSorter shell;
 	QuickSorter quick;
 	BubbleSorter bubble;
+	RadixSorter radix;
+	MergeSorter merge;
 	GlitchSort app;
+	/** pool for sorting bands of pixels in parallel, created when first needed */
+	ForkJoinPool pool;
+	/** each thread that sorts bands gets its own SortSelector, because sorters keep mutable state */
+	ThreadLocal<SortSelector> workers;
+	/** source of random numbers for breaks, each band of sortBands() gets its own stream split from it */
+	GlitchRandom random;
+	/** if not null, receives comparisons, exchanges, breaks and time for each call to sort() */
+	SortMetrics metrics;
 	
 	public SortSelector(GlitchSort app) {
 		this.app = app;
@@ -28,6 +41,8 @@ class SortSelector {
 		quick = new QuickSorter(app);
 		bubble = new BubbleSorter(app);
 		insert = new InsertSorter(app);
+		radix = new RadixSorter(app);
+		merge = new MergeSorter(app);
 		this.sorter = quick;
 	}
 	
@@ -36,6 +51,26 @@ class SortSelector {
 		quick.setRandomBreak(isRandomBreak);
 		bubble.setRandomBreak(isRandomBreak);
 		insert.setRandomBreak(isRandomBreak);
+		radix.setRandomBreak(isRandomBreak);
+		merge.setRandomBreak(isRandomBreak);
+	}
+	
+	/**
+	 * Sets the source of random numbers for breaks in all our sorters.
+	 * @param random   a GlitchRandom, or null to use the host PApplet's random()
+	 */
+	public void setRandom(GlitchRandom random) {
+		this.random = random;
+		shell.setRandom(random);
+		quick.setRandom(random);
+		bubble.setRandom(random);
+		insert.setRandom(random);
+		radix.setRandom(random);
+		merge.setRandom(random);
+	}
+	
+	public GlitchRandom getRandom() {
+		return random;
 	}
 	
 	public QuickSorter getQuick() {
@@ -53,6 +88,14 @@ class SortSelector {
 	public InsertSorter getInsert() {
 		return insert;
 	}
+	
+	public RadixSorter getRadix() {
+		return radix;
+	}
+	
+	public MergeSorter getMerge() {
+		return merge;
+	}
 
 	public ColorSorter getSorter() {
 		return sorter;
@@ -64,6 +107,8 @@ class SortSelector {
 		case SHELL: { sorter = shell; break; }
 		case BUBBLE: { sorter = bubble; break; }
 		case INSERT: { sorter = insert; break; }
+		case RADIX: { sorter = radix; break; }
+		case MERGE: { sorter = merge; break; }
 		default: { sorter = quick; }
 		}
 	}
@@ -77,56 +122,157 @@ class SortSelector {
 		sorter.setBreakPoint(app.breakPoint);
 		sorter.setCompOrder(app.compOrder);
 		sorter.setRandomBreak(app.randomBreak);
+		// swap settings are resolved into the sorter's SwapKernel as they are set
 		sorter.setSwapChannels(app.isSwapChannels);
 		sorter.setSwapWeight(app.swapWeight);
 		sorter.setSwap(app.swap);
+		sorter.setKeyedSort(app.isKeyedSort);
+		quick.setIntroSort(app.isIntroSort);
+		this.setRandom(app.rand);
 		if (!sorter.isRandomBreak()) {
-			shell.setAscendingSort(app.isAscendingSort);
-			shell.setCompOrder(app.compOrder);
-			shell.setRandomBreak(app.randomBreak);
+			radix.setAscendingSort(app.isAscendingSort);
+			radix.setCompOrder(app.compOrder);
+			radix.setRandomBreak(app.randomBreak);
 			/*
-			 * don't need to set swapping if there's no break
-			shell.setSwapChannels(app.isSwapChannels);
-			shell.setSwapWeight(app.swapWeight);
-			shell.setSwap(app.swap);
+			 * radix sort doesn't exchange pixels, so there is no channel swapping to set
+			radix.setSwapChannels(app.isSwapChannels);
+			radix.setSwapWeight(app.swapWeight);
+			radix.setSwap(app.swap);
 			*/
 		}
 	}
 
 	/**
-	 * Sort an array within specified bounds. If isRandomBreak is false, use shell sort for a complete sort. 
-	 * This is a somewhat slower sort than quick sort, but it is not affected by the order
-	 * in the array. What we lose in speed, we gain by not repeating logic tests. Quick sort slows
-	 * to a crawl on ordered or reverse ordered arrays. Note that shell sort currently does not do 
+	 * Sort an array within specified bounds. If isRandomBreak is false, use radix sort for a complete sort. 
+	 * Radix sort runs in linear time and is not affected by the order in the array. Quick sort slows
+	 * to a crawl on ordered or reverse ordered arrays. Note that radix sort does not do 
 	 * channel-swapping, but it really doesn't make much sense to channel-swap on a complete sort.
 	 * @param a   array to sort
 	 * @param l   left bound
 	 * @param r   right bound
 	 */
 	public void sort(int[] a, int l, int r) {
-		if (!sorter.isRandomBreak()) {
-			this.shellSort(a, l, r);
-		}
-		else {
-			sorter.sort(a, l, r);
+		ColorSorter active = sorter.isRandomBreak() ? sorter : radix;
+		if (null == metrics) {
+			active.sort(a, l, r);
+			return;
 		}
+		long comparisons = active.getCount();
+		long exchanges = active.getExchanges();
+		long breaks = active.getBreaks();
+		long start = System.nanoTime();
+		active.sort(a, l, r);
+		long nanos = System.nanoTime() - start;
+		metrics.recordBand(active.getCount() - comparisons, active.getExchanges() - exchanges, 
+				active.getBreaks() - breaks, nanos);
 	}
 	
 	/**
-	 * Sort an array. If isRandomBreak is false, use shell sort for a complete sort. 
-	 * This is a somewhat slower sort than quick sort, but it is not affected by the order
-	 * in the array. What we lose in speed, we gain by not repeating logic tests.  Quick sort slows
-	 * to a crawl on ordered or reverse ordered arrays. Note that shell sort currently does not do 
+	 * Sort an array. If isRandomBreak is false, use radix sort for a complete sort. 
+	 * Radix sort runs in linear time and is not affected by the order in the array. Quick sort slows
+	 * to a crawl on ordered or reverse ordered arrays. Note that radix sort does not do 
 	 * channel-swapping, but it really doesn't make much sense to channel-swap on a complete sort.
 	 * @param a   array to sort
 	 */
 	public void sort(int[] a) {
-		if (!sorter.isRandomBreak()) {
-			this.shellSort(a, 0, a.length - 1);
+		this.sort(a, 0, a.length - 1);
+	}
+	
+	/**
+	 * Sorts bands of an array, in parallel if isParallel is true. Each band 
+	 * is sorted just as sort(a, l, r) would sort it, by a SortSelector belonging to the thread that 
+	 * sorts the band. Band i draws its random numbers from random.split(i), so the results are the 
+	 * same whether or not we sort in parallel. The bands must not overlap. 
+	 * @param a            array to sort
+	 * @param bands        pairs of left and right bounds, {l0, r0, l1, r1, ...}
+	 * @param isParallel   true if bands should be sorted in parallel
+	 */
+	public void sortBands(int[] a, int[] bands, boolean isParallel) {
+		int count = bands.length / 2;
+		if (!isParallel || count < 2) {
+			GlitchRandom commandRandom = random;
+			for (int i = 0; i < count; i++) {
+				if (null != commandRandom) this.setRandom(commandRandom.split(i));
+				this.sort(a, bands[2 * i], bands[2 * i + 1]);
+			}
+			this.setRandom(commandRandom);
+			return;
 		}
-		else {
-			sorter.sort(a);
+		if (null == pool) {
+			pool = new ForkJoinPool();
+			workers = new ThreadLocal<SortSelector>() {
+				@Override
+				protected SortSelector initialValue() {
+					return new SortSelector(app);
+				}
+			};
 		}
+		// a few bands per task lets fast workers pick up the slack when breaks make sorting times uneven
+		int grain = Math.max(1, count / (4 * pool.getParallelism()));
+		pool.invoke(new BandSorter(a, bands, 0, count, grain));
+	}
+
+	/**
+	 * @return a new SortSelector with our sorter, the app's control state and our metrics,
+	 *         for a thread that sorts blocks of pixels (see TileExecutor)
+	 */
+	public SortSelector newWorker() {
+		SortSelector worker = new SortSelector(app);
+		worker.setSorter(sorter.getSorterType());
+		worker.setControlState();
+		worker.setMetrics(metrics);
+		return worker;
+	}
+
+	/**
+	 * Sorts bands lo..hi-1 of an array, splitting the work into tasks of no more than grain bands.
+	 */
+	class BandSorter extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		int[] a;
+		int[] bands;
+		int lo;
+		int hi;
+		int grain;
+		
+		public BandSorter(int[] a, int[] bands, int lo, int hi, int grain) {
+			this.a = a;
+			this.bands = bands;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > grain) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new BandSorter(a, bands, lo, mid, grain), new BandSorter(a, bands, mid, hi, grain));
+				return;
+			}
+			SortSelector worker = workers.get();
+			worker.setSorter(sorter.getSorterType());
+			worker.setControlState();
+			worker.setMetrics(metrics);
+			for (int i = lo; i < hi; i++) {
+				worker.setRandom(null != random ? random.split(i) : null);
+				worker.sort(a, bands[2 * i], bands[2 * i + 1]);
+			}
+		}
+	}
+	
+	/**
+	 * @return the metrics that sort() reports to, or null
+	 */
+	public SortMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param metrics   SortMetrics that sort() should report each band or block to, or null
+	 */
+	public void setMetrics(SortMetrics metrics) {
+		this.metrics = metrics;
 	}
 	
 	public void insertSort(int[] a, int l, int r) {
@@ -145,6 +291,14 @@ class SortSelector {
 		quick.sort(a, l, r);
 	}
 	
+	public void radixSort(int[] a, int l, int r) {
+		radix.sort(a, l, r);
+	}
+	
+	public void mergeSort(int[] a, int l, int r) {
+		merge.sort(a, l, r);
+	}
+	
 	/**
 	 * Performs an insert sort on an array of ints. Insert sort proceeds through
 	 * the array from beginning to end, comparing every number against all remaining numbers. 
@@ -162,7 +316,7 @@ class SortSelector {
 		}
 
 		@Override
-		public void sort(int[] a, int l, int r) { 
+		public void sortValues(int[] a, int l, int r) { 
 			outerloop:
 				for (int i = l+1; i <= r; i++) {
 					for (int j = i; j > l; j--) {
@@ -176,6 +330,21 @@ class SortSelector {
 					}
 				}
 		} 
+
+		@Override
+		public void sortKeys(long[] a, int l, int r) { 
+			outerloop:
+				for (int i = l+1; i <= r; i++) {
+					for (int j = i; j > l; j--) {
+						compExch(a, j-1, j); 
+						if (this.isRandomBreak) {
+							if (breakTest()) {
+								break outerloop;
+							}
+						}
+					}
+				}
+		} 
 		
 	}
 	
@@ -185,10 +354,17 @@ class SortSelector {
 	 * conquer approach to sorting. It partitions the array into smaller arrays, recursively.
 	 * With random breaks, it makes more interesting glitches than InsertSorter, since it operates 
 	 * over larger distances to exchange keys. It is also a very fast sorting method for disordered
-	 * arrays (most pictures, in other words) but will crawl if fed an array that is already sorted
-	 * or nearly sorted (or inverse sorted or nearly inverse sorted). 
+	 * arrays (most pictures, in other words). The original recursive quicksort will crawl if fed 
+	 * an array that is already sorted or nearly sorted (or inverse sorted or nearly inverse sorted), 
+	 * which is why we use introsort unless isIntroSort is false. 
 	 */
 	class QuickSorter extends AbstractColorSorter implements Sorter {
+		/** if true, sorts with an iterative introsort, otherwise with the original recursive quicksort */
+		boolean isIntroSort = true;
+		/** explicit stack for introsort, three ints for each entry: left bound, right bound, depth limit */
+		int[] stack = new int[192];
+		/** flag on the depth limit of a right partition, which is only sorted if breakTest() returns false */
+		static final int GUARDED = 1 << 30;
 
 		public QuickSorter(PApplet app, float breakPoint) {
 			super(app);
@@ -198,9 +374,31 @@ class SortSelector {
 		public QuickSorter(PApplet app) {
 			this(app, 144.0f);
 		}
+		
+		/**
+		 * @return the isIntroSort
+		 */
+		public boolean isIntroSort() {
+			return isIntroSort;
+		}
+
+		/**
+		 * @param isIntroSort the isIntroSort to set
+		 */
+		public void setIntroSort(boolean isIntroSort) {
+			this.isIntroSort = isIntroSort;
+		}
 				
 		@Override
-		public void sort(int[] a, int l, int r) { 
+		public void sortValues(int[] a, int l, int r) { 
+			if (isIntroSort) introSortValues(a, l, r);
+			else quickSortValues(a, l, r);
+		}
+		
+		/**
+		 * The original recursive quicksort, with a[r] as the pivot. 
+		 */
+		public void quickSortValues(int[] a, int l, int r) { 
 			if (r <= l) return;
 			int i = partition(a, l, r);
 			if (this.isRandomBreak) {
@@ -209,16 +407,52 @@ class SortSelector {
 					return;
 				}
 			}
-			sort(a, l, i - 1);
+			quickSortValues(a, l, i - 1);
 			if (this.isRandomBreak) {
 				if (breakTest()) {
 					// if (verbose) println("random break at "+ count);
 					return;
 				}
 			}
-			sort(a, i + 1, r);
+			quickSortValues(a, i + 1, r);
 		} 
 		
+		/**
+		 * Introsort: quicksort with median of three pivots, which switches to heapsort when partitions 
+		 * get too deep, so it runs in O(n log n) time even on sorted rows or rows with many repeated values.
+		 * An explicit stack replaces recursion, but partitions are visited and random breaks are tested
+		 * in the same order as in quickSortValues(): a break abandons the current partition, and the right 
+		 * half of a partition waits on the stack with a break test of its own. 
+		 */
+		public void introSortValues(int[] a, int l, int r) {
+			if (r <= l) return;
+			int sp = push(0, l, r, depthLimit(r - l + 1));
+			while (sp > 0) {
+				sp -= 3;
+				int lo = stack[sp];
+				int hi = stack[sp + 1];
+				int depth = stack[sp + 2];
+				if ((depth & GUARDED) != 0) {
+					if (this.isRandomBreak) {
+						if (breakTest()) continue;
+					}
+					depth &= ~GUARDED;
+				}
+				if (hi <= lo) continue;
+				if (0 == depth) {
+					heapSort(a, lo, hi);
+					continue;
+				}
+				medianOfThree(a, lo, hi);
+				int i = partition(a, lo, hi);
+				if (this.isRandomBreak) {
+					if (breakTest()) continue;
+				}
+				sp = push(sp, i + 1, hi, (depth - 1) | GUARDED);
+				sp = push(sp, lo, i - 1, depth - 1);
+			}
+		}
+		
 		public int partition(int[] a, int l, int r) {
 			int i = l-1;
 			int j = r; 
@@ -232,6 +466,150 @@ class SortSelector {
 			exch(a, i, r); 
 			return i; 
 		}
+		
+		/**
+		 * Moves the median of a[l], a[mid] and a[r] to a[r], where partition() expects the pivot.
+		 */
+		public void medianOfThree(int[] a, int l, int r) {
+			if (r - l < 2) return;
+			int mid = (l + r) >>> 1;
+			compExch(a, l, mid);
+			compExch(a, l, r);
+			compExch(a, mid, r);
+			exch(a, mid, r);
+		}
+		
+		public void heapSort(int[] a, int l, int r) {
+			int n = r - l + 1;
+			for (int k = n / 2; k >= 1; k--) sink(a, l, k, n);
+			while (n > 1) {
+				exch(a, l, l + n - 1);
+				sink(a, l, 1, --n);
+			}
+		}
+		
+		/**
+		 * Restores heap order for the heap of n elements at a[l..], with the heap's 1-based index k.
+		 */
+		public void sink(int[] a, int l, int k, int n) {
+			while (2 * k <= n) {
+				int j = 2 * k;
+				if (j < n && less(a[l + j - 1], a[l + j])) j++;
+				if (!less(a[l + k - 1], a[l + j - 1])) break;
+				exch(a, l + k - 1, l + j - 1);
+				k = j;
+			}
+		}
+		
+		@Override
+		public void sortKeys(long[] a, int l, int r) { 
+			if (isIntroSort) introSortKeys(a, l, r);
+			else quickSortKeys(a, l, r);
+		}
+		
+		public void quickSortKeys(long[] a, int l, int r) { 
+			if (r <= l) return;
+			int i = partition(a, l, r);
+			if (this.isRandomBreak) {
+				if (breakTest()) return;
+			}
+			quickSortKeys(a, l, i - 1);
+			if (this.isRandomBreak) {
+				if (breakTest()) return;
+			}
+			quickSortKeys(a, i + 1, r);
+		} 
+		
+		public void introSortKeys(long[] a, int l, int r) {
+			if (r <= l) return;
+			int sp = push(0, l, r, depthLimit(r - l + 1));
+			while (sp > 0) {
+				sp -= 3;
+				int lo = stack[sp];
+				int hi = stack[sp + 1];
+				int depth = stack[sp + 2];
+				if ((depth & GUARDED) != 0) {
+					if (this.isRandomBreak) {
+						if (breakTest()) continue;
+					}
+					depth &= ~GUARDED;
+				}
+				if (hi <= lo) continue;
+				if (0 == depth) {
+					heapSort(a, lo, hi);
+					continue;
+				}
+				medianOfThree(a, lo, hi);
+				int i = partition(a, lo, hi);
+				if (this.isRandomBreak) {
+					if (breakTest()) continue;
+				}
+				sp = push(sp, i + 1, hi, (depth - 1) | GUARDED);
+				sp = push(sp, lo, i - 1, depth - 1);
+			}
+		}
+		
+		public int partition(long[] a, int l, int r) {
+			int i = l-1;
+			int j = r; 
+			long v = a[r]; 
+			for (;;) { 
+				while (less(a[++i], v)); 
+				while (less(v, a[--j])) if (j == l) break; 
+				if (i >= j) break; 
+				exch(a, i, j); 
+			} 
+			exch(a, i, r); 
+			return i; 
+		}
+		
+		public void medianOfThree(long[] a, int l, int r) {
+			if (r - l < 2) return;
+			int mid = (l + r) >>> 1;
+			compExch(a, l, mid);
+			compExch(a, l, r);
+			compExch(a, mid, r);
+			exch(a, mid, r);
+		}
+		
+		public void heapSort(long[] a, int l, int r) {
+			int n = r - l + 1;
+			for (int k = n / 2; k >= 1; k--) sink(a, l, k, n);
+			while (n > 1) {
+				exch(a, l, l + n - 1);
+				sink(a, l, 1, --n);
+			}
+		}
+		
+		public void sink(long[] a, int l, int k, int n) {
+			while (2 * k <= n) {
+				int j = 2 * k;
+				if (j < n && less(a[l + j - 1], a[l + j])) j++;
+				if (!less(a[l + k - 1], a[l + j - 1])) break;
+				exch(a, l + k - 1, l + j - 1);
+				k = j;
+			}
+		}
+		
+		/**
+		 * @param n   number of elements to sort
+		 * @return    number of partitioning levels before introsort switches to heapsort, 2 * floor(log2(n))
+		 */
+		public int depthLimit(int n) {
+			return 2 * (31 - Integer.numberOfLeadingZeros(n));
+		}
+		
+		/**
+		 * Pushes an entry on the introsort stack, growing it if necessary.
+		 * @return the new stack pointer
+		 */
+		public int push(int sp, int l, int r, int depth) {
+			if (sp + 3 > stack.length) stack = java.util.Arrays.copyOf(stack, 2 * stack.length);
+			stack[sp] = l;
+			stack[sp + 1] = r;
+			stack[sp + 2] = depth;
+			return sp + 3;
+		}
 	}
 	
 
@@ -257,7 +635,7 @@ class SortSelector {
 		}
 		
 		@Override
-		public void sort(int[] a, int l, int r) {
+		public void sortValues(int[] a, int l, int r) {
 			for (h = 1; h <= (r - l)/divisor; h = ratio * h + 1);
 			outerloop:
 			for ( ; h > 0; h /= ratio) {
@@ -279,6 +657,26 @@ class SortSelector {
 				}
 			}
 		}
+		
+		@Override
+		public void sortKeys(long[] a, int l, int r) {
+			for (h = 1; h <= (r - l)/divisor; h = ratio * h + 1);
+			outerloop:
+			for ( ; h > 0; h /= ratio) {
+				for (int i = l+h; i <= r; i++) { 
+					int j = i; 
+					long v = a[i]; 
+					while (j >= l + h && less(v, a[j - h])) { 
+						a[j] = a[j - h]; 
+						j -= h; 
+					} 
+					a[j] = v; 
+					if (this.isRandomBreak) {
+						if (breakTest()) break outerloop;
+					}
+				}
+			}
+		}
 	
 		/**
 		 * @param ratio the ratio to set
@@ -315,7 +713,7 @@ class SortSelector {
 		}
 		
 		@Override
-		public void sort(int[]a, int l, int r) {
+		public void sortValues(int[]a, int l, int r) {
 			outerloop:
 				for (int i = l; i < r; i++) 
 					for (int j = r; j > i; j--) {
@@ -328,8 +726,323 @@ class SortSelector {
 						}
 					}
 		}
+		
+		@Override
+		public void sortKeys(long[] a, int l, int r) {
+			outerloop:
+				for (int i = l; i < r; i++) 
+					for (int j = r; j > i; j--) {
+						compExch(a, j-1, j); 		
+						if (this.isRandomBreak) {
+							if (breakTest()) break outerloop;
+						}
+					}
+		}
 	}
 	
 	
+	/**
+	 * Performs a least significant digit radix sort on an array of int, one byte of the 
+	 * 24-bit sort key at a time. Radix sort does no comparisons and runs in linear time, 
+	 * so it is the fastest way to completely sort large blocks of pixels, such as whole images. 
+	 * With random breaks, the sort may stop after any pass over the keys, leaving pixels 
+	 * sorted only by their less significant components. Radix sort always sorts keys: 
+	 * there are no exchanges, so channel swapping is ignored. 
+	 */
+	class RadixSorter extends AbstractColorSorter implements Sorter {
+		/** buffer for the passes of radix sort */
+		long[] aux;
+		/** counts of each byte value, then offsets for the next pass */
+		int[] counts = new int[257];
+	
+		public RadixSorter(PApplet app, float breakPoint) {
+			super(app);
+			this.breakPoint = breakPoint;
+			this.sorterType = SorterType.RADIX;
+		}
+		public RadixSorter(PApplet app) {
+			this(app, 500.0f);
+		}
+		
+		/**
+		 * There are no exchanges to swap channels with, so we sort keys.
+		 */
+		@Override
+		public void sortValues(int[] a, int l, int r) {
+			if (r <= l) return;
+			long[] k = loadKeys(a, l, r);
+			sortKeys(k, 0, r - l);
+			storeKeys(k, a, l, r);
+		}
+		
+		@Override
+		public void sortKeys(long[] a, int l, int r) {
+			int n = r - l + 1;
+			if (n < 2) return;
+			long[] buf = aux;
+			if (null == buf || buf.length < n) {
+				buf = new long[n];
+				if (n <= MAX_RETAINED_KEYS) aux = buf;
+			}
+			// source and destination of each pass, and their offsets
+			long[] src = a;
+			long[] dst = buf;
+			int srcOff = l;
+			int dstOff = 0;
+			for (int shift = 32; shift < 56; shift += 8) {
+				java.util.Arrays.fill(counts, 0);
+				for (int i = 0; i < n; i++) {
+					counts[(int) (src[srcOff + i] >>> shift) & 0xFF]++;
+				}
+				// if every key has the same value in this byte, the pass would not change anything
+				if (counts[(int) (src[srcOff] >>> shift) & 0xFF] == n) continue;
+				// convert counts to starting offsets
+				int sum = 0;
+				for (int b = 0; b < 256; b++) {
+					int c = counts[b];
+					counts[b] = sum;
+					sum += c;
+				}
+				for (int i = 0; i < n; i++) {
+					long v = src[srcOff + i];
+					dst[dstOff + counts[(int) (v >>> shift) & 0xFF]++] = v;
+				}
+				count += n;
+				long[] t = src; src = dst; dst = t;
+				int o = srcOff; srcOff = dstOff; dstOff = o;
+				if (this.isRandomBreak) {
+					if (breakTest()) break;
+				}
+			}
+			// copy back if the last pass left the pixels in the buffer
+			if (src != a) System.arraycopy(src, srcOff, a, l, n);
+		}
+	}
+	
+	
+	/**
+	 * Performs a natural merge sort on an array of ints, in the manner of TimSort. Runs that are 
+	 * already in order are found and merged, so repeated passes over mostly sorted rows take close 
+	 * to linear time. Short runs are extended with binary insertion sort. The sort is stable. 
+	 * With random breaks, breakTest() is called after each merge, and a break stops the sort, 
+	 * leaving the rest of the array in partly sorted runs. Like radix sort, merge sort does not 
+	 * exchange pixels, so it always sorts keys and channel swapping is ignored.
+	 */
+	class MergeSorter extends AbstractColorSorter implements Sorter {
+		/** shortest run we merge, shorter runs are extended with binary insertion sort */
+		static final int MIN_MERGE = 32;
+		/** buffer for merging */
+		long[] aux;
+		/** start of each pending run */
+		int[] runBase = new int[85];
+		/** length of each pending run */
+		int[] runLen = new int[85];
+		/** number of pending runs */
+		int stackSize = 0;
+		/** true if a random break has stopped the current sort */
+		boolean isBroken = false;
+
+		public MergeSorter(PApplet app, float breakPoint) {
+			super(app);
+			this.breakPoint = breakPoint;
+			this.sorterType = SorterType.MERGE;
+		}
+		public MergeSorter(PApplet app) {
+			this(app, 900.0f);
+		}
+		
+		/**
+		 * There are no exchanges to swap channels with, so we sort keys.
+		 */
+		@Override
+		public void sortValues(int[] a, int l, int r) {
+			if (r <= l) return;
+			long[] k = loadKeys(a, l, r);
+			sortKeys(k, 0, r - l);
+			storeKeys(k, a, l, r);
+		}
+		
+		@Override
+		public void sortKeys(long[] a, int l, int r) {
+			int remaining = r - l + 1;
+			if (remaining < 2) return;
+			stackSize = 0;
+			isBroken = false;
+			int minRun = minRunLength(remaining);
+			int lo = l;
+			while (remaining > 0) {
+				int len = countRunAndMakeAscending(a, lo, r);
+				if (len < minRun) {
+					int force = Math.min(remaining, minRun);
+					binaryInsertionSort(a, lo, lo + force - 1, lo + len);
+					len = force;
+				}
+				runBase[stackSize] = lo;
+				runLen[stackSize] = len;
+				stackSize++;
+				mergeCollapse(a);
+				if (isBroken) return;
+				lo += len;
+				remaining -= len;
+			}
+			// merge all remaining runs
+			while (stackSize > 1 && !isBroken) {
+				int n = stackSize - 2;
+				if (n > 0 && runLen[n - 1] < runLen[n + 1]) n--;
+				mergeAt(a, n);
+			}
+		}
+		
+		/**
+		 * @param n   number of elements to sort
+		 * @return    minimum run length, between MIN_MERGE/2 and MIN_MERGE, chosen so that n/minRun is close to a power of 2
+		 */
+		public int minRunLength(int n) {
+			int r = 0;
+			while (n >= MIN_MERGE) {
+				r |= (n & 1);
+				n >>= 1;
+			}
+			return n + r;
+		}
+		
+		/**
+		 * Finds the length of the run starting at a[lo], reversing it if it is descending. 
+		 * Descending runs must be strictly descending, to keep the sort stable.
+		 * @return length of the run
+		 */
+		public int countRunAndMakeAscending(long[] a, int lo, int hi) {
+			int runHi = lo + 1;
+			if (runHi > hi) return 1;
+			if (less(a[runHi++], a[lo])) {
+				while (runHi <= hi && less(a[runHi], a[runHi - 1])) runHi++;
+				reverse(a, lo, runHi - 1);
+			}
+			else {
+				while (runHi <= hi && !less(a[runHi], a[runHi - 1])) runHi++;
+			}
+			return runHi - lo;
+		}
+		
+		public void reverse(long[] a, int lo, int hi) {
+			while (lo < hi) {
+				long t = a[lo];
+				a[lo++] = a[hi];
+				a[hi--] = t;
+			}
+		}
+		
+		/**
+		 * Sorts a[lo..hi] with binary insertion, given that a[lo..start-1] is already sorted.
+		 */
+		public void binaryInsertionSort(long[] a, int lo, int hi, int start) {
+			for ( ; start <= hi; start++) {
+				long pivot = a[start];
+				int left = lo;
+				int right = start;
+				while (left < right) {
+					int mid = (left + right) >>> 1;
+					if (less(pivot, a[mid])) right = mid;
+					else left = mid + 1;
+				}
+				System.arraycopy(a, left, a, left + 1, start - left);
+				a[left] = pivot;
+			}
+		}
+		
+		/**
+		 * Merges runs on the stack until the run lengths satisfy the TimSort invariants, 
+		 * runLen[i - 2] > runLen[i - 1] + runLen[i] and runLen[i - 1] > runLen[i].
+		 */
+		public void mergeCollapse(long[] a) {
+			while (stackSize > 1 && !isBroken) {
+				int n = stackSize - 2;
+				if ((n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1]) 
+						|| (n > 1 && runLen[n - 2] <= runLen[n - 1] + runLen[n])) {
+					if (runLen[n - 1] < runLen[n + 1]) n--;
+				}
+				else if (runLen[n] > runLen[n + 1]) {
+					break;
+				}
+				mergeAt(a, n);
+			}
+		}
+		
+		/**
+		 * Merges runs i and i + 1 on the stack. Elements at the start of run i and at the end of run i + 1
+		 * that are already in place are found by binary search and left alone, so runs that are already 
+		 * in order merge in logarithmic time.
+		 */
+		public void mergeAt(long[] a, int i) {
+			int base1 = runBase[i];
+			int len1 = runLen[i];
+			int base2 = runBase[i + 1];
+			int len2 = runLen[i + 1];
+			runLen[i] = len1 + len2;
+			if (i == stackSize - 3) {
+				runBase[i + 1] = runBase[i + 2];
+				runLen[i + 1] = runLen[i + 2];
+			}
+			stackSize--;
+			// elements of run 1 that are not greater than the first element of run 2 are in place
+			int k = upperBound(a, base1, base1 + len1, a[base2]);
+			len1 -= k - base1;
+			base1 = k;
+			if (len1 > 0) {
+				// elements of run 2 that are not less than the last element of run 1 are in place
+				len2 = lowerBound(a, base2, base2 + len2, a[base1 + len1 - 1]) - base2;
+				if (len2 > 0) merge(a, base1, len1, base2, len2);
+			}
+			if (this.isRandomBreak) {
+				if (breakTest()) isBroken = true;
+			}
+		}
+		
+		/**
+		 * @return index of the first element of a[lo..hi-1] that is greater than key, hi if there is none
+		 */
+		public int upperBound(long[] a, int lo, int hi, long key) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (less(key, a[mid])) hi = mid;
+				else lo = mid + 1;
+			}
+			return lo;
+		}
+		
+		/**
+		 * @return index of the first element of a[lo..hi-1] that is not less than key, hi if there is none
+		 */
+		public int lowerBound(long[] a, int lo, int hi, long key) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (less(a[mid], key)) lo = mid + 1;
+				else hi = mid;
+			}
+			return lo;
+		}
+		
+		/**
+		 * Merges adjacent sorted runs a[base1..base1+len1-1] and a[base2..base2+len2-1], with base2 = base1 + len1.
+		 */
+		public void merge(long[] a, int base1, int len1, int base2, int len2) {
+			long[] buf = aux;
+			if (null == buf || buf.length < len1) {
+				buf = new long[len1];
+				if (len1 <= MAX_RETAINED_KEYS) aux = buf;
+			}
+			System.arraycopy(a, base1, buf, 0, len1);
+			int i = 0;
+			int j = base2;
+			int k = base1;
+			int end2 = base2 + len2;
+			while (i < len1 && j < end2) {
+				// take from run 1 on ties, to keep the sort stable
+				if (less(a[j], buf[i])) a[k++] = a[j++];
+				else a[k++] = buf[i++];
+			}
+			while (i < len1) a[k++] = buf[i++];
+		}
+	}
 
 }
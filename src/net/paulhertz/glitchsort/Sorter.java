@@ -35,8 +35,8 @@ public interface Sorter {
 	public void compExch(int[] a, int i, int j);		
 	/**
 	 * Sort an array or int between a left index and a right index.
-	 * Each sorting algorithm has its own implementation of this method that 
-	 * fills in the abstract method in AbstractColorSorter.
+	 * AbstractColorSorter implements this method by calling the sortKeys() or sortValues() 
+	 * method that each sorting algorithm provides.
 	 * @param a   an array of int
 	 * @param l   the left (lower) index
 	 * @param r   the right (upper) index
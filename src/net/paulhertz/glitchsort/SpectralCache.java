@@ -0,0 +1,177 @@
+package net.paulhertz.glitchsort;
+
+import static net.paulhertz.glitchsort.GlitchConstants.*;
+
+/**
+ * Keeps the forward spectrum of every block of an image, for each channel that equalizer and
+ * statistical FFT glitches transform, so that new settings can be applied to the cached spectra
+ * with only an inverse transform. The spectra are calculated from a copy of the image pixels made
+ * when the cache is created, so each pass glitches the same source image with the current settings,
+ * until the image is edited by some other command.
+ * <p>
+ * A cache belongs to one image, one scan and one FFT size. GlitchSort counts edits to its image
+ * in imageVersion, and isValid() checks that none have been made since the cache was last used.
+ * Blocks are numbered as TileExecutor tiles, and each block is written by a single thread,
+ * so the cache can be filled in parallel.
+ * </p>
+ */
+class SpectralCache {
+	/** the image the cache belongs to */
+	final Object image;
+	/** imageVersion of the image as the cache last saw it */
+	int version;
+	/** width of the image */
+	final int width;
+	/** height of the image */
+	final int height;
+	/** the class, size and orientation of the scan that reads blocks */
+	final String scan;
+	/** number of samples in a block */
+	final int timeSize;
+	/** number of bands in the spectrum of a block */
+	final int specSize;
+	/** number of blocks */
+	final int blocks;
+	/** the pixels of the image when the cache was created, spectra are calculated from these */
+	final int[] pixels;
+	/** for each channel, the real and imaginary parts of each block's spectrum, or null */
+	private final float[][] spectra = new float[ChannelNames.values().length][];
+	/** for each channel, statistics for each block's spectrum (see GlitchSort.fftStatistics()), or null */
+	private final float[][] stats = new float[ChannelNames.values().length][];
+	/** for each channel, true once spectra are stored for all blocks */
+	private final boolean[] isSpectraFilled = new boolean[ChannelNames.values().length];
+	/** for each channel, true once statistics are stored for all blocks */
+	private final boolean[] isStatsFilled = new boolean[ChannelNames.values().length];
+
+	/**
+	 * @param image      the image to cache spectra for
+	 * @param version    the imageVersion of the image
+	 * @param width      width of the image
+	 * @param height     height of the image
+	 * @param pixels     pixels of the image, copied
+	 * @param zz         scanner that reads blocks
+	 * @param timeSize   number of samples in a block
+	 * @param blocks     number of blocks
+	 */
+	SpectralCache(Object image, int version, int width, int height, int[] pixels, PixelScannerINF zz, int timeSize, int blocks) {
+		this.image = image;
+		this.version = version;
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels.clone();
+		this.scan = scanKey(zz);
+		this.timeSize = timeSize;
+		this.specSize = timeSize / 2 + 1;
+		this.blocks = blocks;
+	}
+
+	/**
+	 * @param zz   a scanner
+	 * @return     a key for the class, size and orientation of the scan
+	 */
+	static String scanKey(PixelScannerINF zz) {
+		return zz.getClass().getSimpleName() +" "+ zz.getBlockWidth() +" "+ zz.getOrientation();
+	}
+
+	/**
+	 * @return true if the cache was made for this image, scan and FFT size,
+	 *         and the image hasn't been edited since the cache was last used
+	 */
+	boolean isValid(Object image, int version, int width, int height, PixelScannerINF zz, int timeSize) {
+		return this.image == image && this.version == version && this.width == width && this.height == height
+				&& this.timeSize == timeSize && this.scan.equals(scanKey(zz));
+	}
+
+	/**
+	 * @param chan   a channel
+	 * @return       true if spectra are stored for all blocks of chan
+	 */
+	boolean hasSpectra(ChannelNames chan) {
+		return isSpectraFilled[chan.ordinal()];
+	}
+
+	/**
+	 * @param chan   a channel
+	 * @return       true if statistics are stored for all blocks of chan
+	 */
+	boolean hasStats(ChannelNames chan) {
+		return isStatsFilled[chan.ordinal()];
+	}
+
+	/**
+	 * Allocates storage for the spectra of a channel, and for their statistics if isStats is true.
+	 * Call before blocks are stored, then call setFilled() once all blocks have been stored.
+	 */
+	void allocate(ChannelNames chan, boolean isStats) {
+		int c = chan.ordinal();
+		if (null == spectra[c]) spectra[c] = new float[blocks * 2 * specSize];
+		if (isStats && null == stats[c]) stats[c] = new float[blocks * 6];
+	}
+
+	/**
+	 * Marks the spectra of a channel as stored for all blocks, and their statistics if isStats is true.
+	 */
+	void setFilled(ChannelNames chan, boolean isStats) {
+		int c = chan.ordinal();
+		isSpectraFilled[c] = null != spectra[c];
+		if (isStats) isStatsFilled[c] = null != stats[c];
+	}
+
+	/**
+	 * Stores the spectrum of a block.
+	 * @param chan    a channel
+	 * @param block   block number
+	 * @param fft     a Spectrum that has just done a forward transform of the block
+	 */
+	void putSpectrum(ChannelNames chan, int block, Spectrum fft) {
+		float[] s = spectra[chan.ordinal()];
+		int p = block * 2 * specSize;
+		System.arraycopy(fft.getSpectrumReal(), 0, s, p, specSize);
+		System.arraycopy(fft.getSpectrumImaginary(), 0, s, p + specSize, specSize);
+	}
+
+	/**
+	 * Loads the spectrum of a block into a Spectrum, ready for scaling and an inverse transform.
+	 * @param chan    a channel
+	 * @param block   block number
+	 * @param fft     a Spectrum of timeSize samples
+	 */
+	void getSpectrum(ChannelNames chan, int block, Spectrum fft) {
+		float[] s = spectra[chan.ordinal()];
+		int p = block * 2 * specSize;
+		System.arraycopy(s, p, fft.getSpectrumReal(), 0, specSize);
+		System.arraycopy(s, p + specSize, fft.getSpectrumImaginary(), 0, specSize);
+	}
+
+	/**
+	 * @param chan        a channel
+	 * @param block       block number
+	 * @param blockStats  the 6 statistics of the block's spectrum to store
+	 */
+	void putStats(ChannelNames chan, int block, float[] blockStats) {
+		System.arraycopy(blockStats, 0, stats[chan.ordinal()], block * 6, 6);
+	}
+
+	/**
+	 * @param chan    a channel
+	 * @param block   block number
+	 * @param dst     an array of 6 floats to write statistics to
+	 * @return        dst
+	 */
+	float[] getStats(ChannelNames chan, int block, float[] dst) {
+		System.arraycopy(stats[chan.ordinal()], block * 6, dst, 0, 6);
+		return dst;
+	}
+
+	/**
+	 * @return approximate number of bytes used by the cache
+	 */
+	long getBytes() {
+		long bytes = 4L * pixels.length;
+		for (int c = 0; c < spectra.length; c++) {
+			if (null != spectra[c]) bytes += 4L * spectra[c].length;
+			if (null != stats[c]) bytes += 4L * stats[c].length;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,93 @@
+package net.paulhertz.glitchsort;
+
+/**
+ * The frequency domain view of a block of pixels that FFT glitches work with: a forward transform
+ * of a buffer of samples, access to the bands of the spectrum, and an inverse transform back to samples.
+ * Methods with the same names as methods of Minim's FFT have the same behavior, so code written for
+ * Minim's FFT can use a Spectrum instead. The bulk methods read and scale all bands in one pass.
+ * <p>
+ * A Spectrum keeps the result of the last transform, so it is not thread safe: each thread
+ * that transforms blocks needs its own.
+ * </p>
+ */
+public interface Spectrum {
+
+	/** return the number of samples in a buffer passed to forward() and inverse() */
+	int timeSize();
+
+	/** return the number of bands in the spectrum, timeSize() / 2 + 1 */
+	int specSize();
+
+	/** return the width of each band in Hz, except for the first and last, which are half as wide */
+	float getBandWidth();
+
+	/**
+	 * Performs a forward transform on a buffer of timeSize() samples, which is not modified.
+	 * @param buffer   samples to transform
+	 */
+	void forward(float[] buffer);
+
+	/**
+	 * Performs an inverse transform of the current spectrum.
+	 * @param buffer   an array of timeSize() floats to write the samples to
+	 */
+	void inverse(float[] buffer);
+
+	/**
+	 * @param i   index of a band, clamped to 0..specSize() - 1
+	 * @return    amplitude of the band
+	 */
+	float getBand(int i);
+
+	/**
+	 * Sets the amplitude of a band, keeping its phase. Negative amplitudes are ignored.
+	 * @param i   index of a band
+	 * @param a   new amplitude
+	 */
+	void setBand(int i, float a);
+
+	/**
+	 * Scales the amplitude of a band. Negative factors are ignored.
+	 * @param i   index of a band
+	 * @param s   scaling factor
+	 */
+	void scaleBand(int i, float s);
+
+	/**
+	 * Scales the amplitude of the band that contains a frequency. Negative factors are ignored.
+	 * @param freq   a frequency in Hz
+	 * @param s      scaling factor
+	 */
+	void scaleFreq(float freq, float s);
+
+	/**
+	 * @param freq   a frequency in Hz
+	 * @return       the index of the band that contains it
+	 */
+	int freqToIndex(float freq);
+
+	/**
+	 * @param i   index of a band
+	 * @return    the center frequency of the band in Hz
+	 */
+	float indexToFreq(int i);
+
+	/**
+	 * Writes the amplitudes of all bands to an array.
+	 * @param dst   an array of at least specSize() floats
+	 * @return      dst
+	 */
+	float[] getBands(float[] dst);
+
+	/**
+	 * Scales every band by a factor, in one pass. Unlike scaleBand(), negative factors are not checked.
+	 * @param gains   an array of specSize() scaling factors, one per band
+	 */
+	void scaleBands(float[] gains);
+
+	/** return the real parts of the bands, specSize() floats, changes to the array change the spectrum */
+	float[] getSpectrumReal();
+
+	/** return the imaginary parts of the bands, specSize() floats, changes to the array change the spectrum */
+	float[] getSpectrumImaginary();
+}
@@ -0,0 +1,128 @@
+package net.paulhertz.glitchsort;
+
+import static net.paulhertz.glitchsort.GlitchConstants.*;
+
+/**
+ * Exchanges two pixels while swapping color channels between them, the "Swap" glitch of the sorters.
+ * A SwapKernel is resolved once from the swap settings (isSwapChannels, swap and swapWeight) by create(),
+ * so exchanges don't have to test the settings or unpack colors into arrays.
+ * <p>
+ * Swap settings name a source channel X of v and a target channel Y of w, where v and w are the colors
+ * that the sorter compared most recently. The pixel at i gets v with its X channel replaced by w's Y channel,
+ * the pixel at j gets w with its Y channel replaced by v's X channel. With a swapWeight less than 1,
+ * channels are blended instead of replaced, using 16-bit fixed point weights.
+ * </p>
+ */
+abstract class SwapKernel {
+	/** swapWeight as a 16-bit fixed point number */
+	final int weight;
+	/** bit shift of the source channel of v */
+	final int xShift;
+	/** bit shift of the target channel of w */
+	final int yShift;
+
+	SwapKernel(int xShift, int yShift, int weight) {
+		this.xShift = xShift;
+		this.yShift = yShift;
+		this.weight = weight;
+	}
+
+	/**
+	 * Writes new values to a[i] and a[j].
+	 * @param a   an array of pixel values
+	 * @param i   index of the first pixel
+	 * @param j   index of the second pixel
+	 * @param v   most recently compared color associated with i
+	 * @param w   most recently compared color associated with j
+	 */
+	abstract void exch(int[] a, int i, int j, int v, int w);
+
+	/**
+	 * Returns a kernel for the current swap settings, or null if we aren't swapping channels,
+	 * in which case the sorter should just exchange pixels.
+	 * @param isSwapChannels   true if channels are swapped in exchanges
+	 * @param swap             the channels to swap
+	 * @param swapWeight       amount of swapping, from 0 to 1
+	 * @return                 a SwapKernel or null
+	 */
+	static SwapKernel create(boolean isSwapChannels, SwapChannel swap, float swapWeight) {
+		if (!isSwapChannels || null == swap) return null;
+		int xShift = channelShift(swap.name().charAt(0));
+		int yShift = channelShift(swap.name().charAt(1));
+		if (swapWeight >= 1) return new FullSwap(xShift, yShift);
+		int weight = Math.round(Math.max(0, swapWeight) * 65536);
+		// the blended BR swap has always kept v's blue channel as the red channel of w
+		if (SwapChannel.BR == swap) return new BlendedBRSwap(weight);
+		return new BlendedSwap(xShift, yShift, weight);
+	}
+
+	/**
+	 * @param channel   'R', 'G' or 'B'
+	 * @return          bit shift of the channel in an ARGB color
+	 */
+	static int channelShift(char channel) {
+		switch (channel) {
+		case 'R': return 16;
+		case 'G': return 8;
+		default: return 0;
+		}
+	}
+
+	/**
+	 * Integer version of (int) lerp(l, h, weight).
+	 */
+	final int blend(int l, int h) {
+		return l + (((h - l) * weight) >> 16);
+	}
+
+	/**
+	 * Replaces channels, for a swapWeight of 1.
+	 */
+	static class FullSwap extends SwapKernel {
+		FullSwap(int xShift, int yShift) {
+			super(xShift, yShift, 65536);
+		}
+
+		@Override
+		void exch(int[] a, int i, int j, int v, int w) {
+			int vx = (v >> xShift) & 0xFF;
+			int wy = (w >> yShift) & 0xFF;
+			a[i] = 0xFF000000 | (v & ~(0xFF << xShift)) | wy << xShift;
+			a[j] = 0xFF000000 | (w & ~(0xFF << yShift)) | vx << yShift;
+		}
+	}
+
+	/**
+	 * Blends channels, for a swapWeight between 0 and 1.
+	 */
+	static class BlendedSwap extends SwapKernel {
+		BlendedSwap(int xShift, int yShift, int weight) {
+			super(xShift, yShift, weight);
+		}
+
+		@Override
+		void exch(int[] a, int i, int j, int v, int w) {
+			int vx = (v >> xShift) & 0xFF;
+			int wy = (w >> yShift) & 0xFF;
+			a[i] = 0xFF000000 | (v & ~(0xFF << xShift)) | blend(vx, wy) << xShift;
+			a[j] = 0xFF000000 | (w & ~(0xFF << yShift)) | blend(wy, vx) << yShift;
+		}
+	}
+
+	/**
+	 * Blends channels for the BR swap, which also copies v's blue channel to the red channel of w.
+	 */
+	static class BlendedBRSwap extends SwapKernel {
+		BlendedBRSwap(int weight) {
+			super(0, 16, weight);
+		}
+
+		@Override
+		void exch(int[] a, int i, int j, int v, int w) {
+			int vb = v & 0xFF;
+			int wr = (w >> 16) & 0xFF;
+			a[i] = 0xFF000000 | (v & 0xFFFF00) | blend(vb, wr);
+			a[j] = 0xFF000000 | vb << 16 | (w & 0xFF00) | blend(wr, vb);
+		}
+	}
+}
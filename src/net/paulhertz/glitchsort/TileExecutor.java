@@ -0,0 +1,105 @@
+package net.paulhertz.glitchsort;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an operation on each of a number of tiles, disjoint blocks of pixels, in parallel on all available
+ * processors or serially on the calling thread. Each thread that runs tiles gets its own TileWorker from a
+ * TileWorkerFactory, so scanners, sorters, FFTs and buffers are never shared between threads.
+ * <p>
+ * The image doesn't depend on the order in which tiles are run, provided that a tile only reads and writes
+ * its own pixels, takes its random numbers from a stream split from the command's stream by tile number,
+ * and stores any other results by tile number, to be combined in order once run() returns.
+ * </p>
+ */
+public class TileExecutor {
+	/** pool for running tiles in parallel, created when first needed */
+	private ForkJoinPool pool;
+
+	/**
+	 * Processes tiles, with scanners, sorters and buffers that belong to a single thread.
+	 */
+	public interface TileWorker {
+		/**
+		 * @param tile   the number of a tile, 0..count-1
+		 */
+		void process(int tile);
+	}
+
+	/**
+	 * Creates a TileWorker for each thread that runs tiles.
+	 */
+	public interface TileWorkerFactory {
+		/**
+		 * @return a new TileWorker, called on the thread that will use it
+		 */
+		TileWorker newWorker();
+	}
+
+	/**
+	 * Processes tiles 0..count-1, and returns when all are done.
+	 * @param count        number of tiles
+	 * @param isParallel   true if tiles should be processed in parallel
+	 * @param factory      creates a TileWorker for each thread
+	 */
+	public void run(int count, boolean isParallel, final TileWorkerFactory factory) {
+		if (!isParallel || count < 2) {
+			TileWorker worker = factory.newWorker();
+			for (int i = 0; i < count; i++) {
+				worker.process(i);
+			}
+			return;
+		}
+		if (null == pool) {
+			pool = new ForkJoinPool();
+		}
+		ThreadLocal<TileWorker> workers = new ThreadLocal<TileWorker>() {
+			@Override
+			protected TileWorker initialValue() {
+				return factory.newWorker();
+			}
+		};
+		// a few tiles per task lets fast workers pick up the slack when tiles take uneven times
+		int grain = Math.max(1, count / (4 * pool.getParallelism()));
+		pool.invoke(new TileRunner(workers, 0, count, grain));
+	}
+
+	/**
+	 * @return the number of threads that process tiles in parallel
+	 */
+	public int getParallelism() {
+		return null == pool ? Runtime.getRuntime().availableProcessors() : pool.getParallelism();
+	}
+
+	/**
+	 * Processes tiles lo..hi-1, splitting the work into tasks of no more than grain tiles.
+	 */
+	static class TileRunner extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		ThreadLocal<TileWorker> workers;
+		int lo;
+		int hi;
+		int grain;
+
+		public TileRunner(ThreadLocal<TileWorker> workers, int lo, int hi, int grain) {
+			this.workers = workers;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > grain) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new TileRunner(workers, lo, mid, grain), new TileRunner(workers, mid, hi, grain));
+				return;
+			}
+			TileWorker worker = workers.get();
+			for (int i = lo; i < hi; i++) {
+				worker.process(i);
+			}
+		}
+	}
+}